@@ -1,110 +1,890 @@
 import com.sun.net.httpserver.*;
 import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
 import java.net.InetSocketAddress;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /*
   TaskApp.java
   - single-file Java backend serving frontend and API
   - tasks persist to tasks.json, pomodoro sessions persist to sessions.json
+  - in journal storage mode (default) mutations are appended to tasks.journal /
+    sessions.journal and folded back into the .json snapshots in the background
+    (-Dtaskapp.storage=json restores full-file rewrites on every change)
+  - -Dtaskapp.snapshot=binary keeps those snapshots as tasks.bin / sessions.bin instead;
+    java TaskApp --convert tasks|sessions <in> <out> converts between the two formats
+  - every user works in a workspace of their own (X-Workspace header or /w/<name>/ prefix),
+    loaded on first use and closed again when idle; see Workspaces
   - edit the FRONTEND_DIR if your frontend location differs
 */
 
 public class TaskApp {
 
     // -------------------- Models --------------------
+    /*
+      Both models are held in compact form: ids as UUIDs (two longs), due as an epoch day,
+      priority as a byte, tags as a string shared with every task of the store that has the same
+      tags (TaskStore.shareTags), session times as epoch nanoseconds.
+      Text that wouldn't survive that form (a non-UUID id, a due that isn't a date, a
+      non-canonical instant) is kept verbatim next to it, so the API returns what it was given.
+    */
     static class Task {
-        String id;
+        static final int NO_DUE = Integer.MAX_VALUE;
+        final UUID key; // id; ids that aren't canonical UUIDs get a name-based key
+        final String oddId; // original text of such an id, null otherwise
         String title;
-        String due; // yyyy-MM-dd
+        int dueDay; // epoch day of due, NO_DUE if due isn't a date
+        String oddDue; // text of due when it isn't a yyyy-MM-dd date
         boolean completed;
-        String priority; // High/Medium/Low
-        long daysLeft;
-        String tags;
+        byte priority; // index into PRIORITIES
+        String tags; // never null; shared through TaskStore.shareTags once stored
+        long ord; // insertion order, assigned by TaskStore; keeps ties in GET /tasks stable
+        long seq; // per stored copy, assigned by TaskStore; an edit's old and new copy are distinct index keys
 
         Task(String id, String title, String due, String tags) {
-            this.id = id;
+            UUID u = canonicalUuid(id);
+            this.key = u != null ? u : keyOf(id);
+            this.oddId = u != null ? null : id;
+            this.title = title;
+            setDue(due);
+            setTags(tags);
+            computeMeta();
+        }
+
+        // for loaders and copies that already hold the compact form
+        Task(UUID key, String oddId, String title, int dueDay, String oddDue, String tags) {
+            this.key = key;
+            this.oddId = oddId;
             this.title = title;
-            this.due = due;
-            this.tags = tags == null ? "" : tags;
-            this.completed = false;
+            this.dueDay = dueDay;
+            this.oddDue = oddDue;
+            this.tags = tags;
             computeMeta();
         }
 
-        void computeMeta() {
+        String id() { return oddId != null ? oddId : key.toString(); }
+        String due() { return oddDue != null ? oddDue : LocalDate.ofEpochDay(dueDay).toString(); }
+        String tags() { return tags; }
+        String priority() { return PRIORITIES[priority]; }
+
+        // parses due once; daysLeft and priority then work on the epoch day
+        void setDue(String due) {
+            int day = NO_DUE;
             try {
                 LocalDate d = LocalDate.parse(due);
-                LocalDate now = LocalDate.now();
-                daysLeft = Duration.between(now.atStartOfDay(), d.atStartOfDay()).toDays();
-                if (daysLeft <= 3) priority = "High";
-                else if (daysLeft <= 7) priority = "Medium";
-                else priority = "Low";
-            } catch (Exception e) {
-                daysLeft = Long.MAX_VALUE;
-                priority = "Low";
-            }
+                if (d.toEpochDay() < NO_DUE && d.toString().equals(due)) day = (int) d.toEpochDay();
+            } catch (Exception ignored) {}
+            dueDay = day;
+            oddDue = day == NO_DUE ? due : null;
+        }
+
+        void setTags(String tags) { this.tags = tags == null ? "" : tags; }
+
+        // priority is relative to TaskApp.today and refreshed by the rollover job
+        void computeMeta() { priority = priorityFor(daysLeft()); }
+
+        long daysLeft() { return dueDay == NO_DUE ? Long.MAX_VALUE : dueDay - today; }
+
+        Task copy() {
+            Task c = new Task(key, oddId, title, dueDay, oddDue, tags);
+            c.completed = completed;
+            c.ord = ord;
+            return c;
+        }
+
+        // map key for an id as sent by clients
+        static UUID keyOf(String id) {
+            UUID u = canonicalUuid(id);
+            return u != null ? u : UUID.nameUUIDFromBytes(id.getBytes(StandardCharsets.UTF_8));
         }
     }
 
     static class PomodoroSession {
+        static final long NO_TIME = Long.MIN_VALUE;
         String id;
         String taskId;
-        String start; // ISO instant
-        String end;   // ISO instant
+        long start = NO_TIME, end = NO_TIME; // epoch nanos, NO_TIME when empty or not an instant
+        String oddStart, oddEnd; // start/end text when it isn't the canonical form of the instant
         boolean completed;
-        PomodoroSession(String id, String taskId, String start) {
-            this.id = id; this.taskId = taskId; this.start = start; this.end = ""; this.completed = false;
+
+        PomodoroSession(String id, String taskId) { this.id = id; this.taskId = taskId; }
+
+        PomodoroSession(String id, String taskId, String start) { this(id, taskId); setStart(start); }
+
+        String startText() { return text(start, oddStart); }
+        String endText() { return text(end, oddEnd); }
+
+        void setStart(String s) { start = epochNanos(s); oddStart = odd(s, start); }
+        void setEnd(String s) { end = epochNanos(s); oddEnd = odd(s, end); }
+
+        static String text(long nanos, String odd) { return odd != null ? odd : nanos == NO_TIME ? "" : instantText(nanos); }
+
+        static String odd(String s, long nanos) { return s == null || s.isEmpty() || (nanos != NO_TIME && instantText(nanos).equals(s)) ? null : s; }
+
+        static long epochNanos(String s) {
+            if (s == null || s.isEmpty()) return NO_TIME;
+            try {
+                Instant i = Instant.parse(s);
+                return Math.addExact(Math.multiplyExact(i.getEpochSecond(), 1_000_000_000L), i.getNano());
+            } catch (DateTimeException | ArithmeticException e) {
+                return NO_TIME;
+            }
+        }
+
+        static String instantText(long nanos) { return Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L)).toString(); }
+    }
+
+    // the UUID if s is exactly UUID.toString() output (lower-case hex, dashed), else null
+    static UUID canonicalUuid(String s) {
+        if (s == null || s.length() != 36) return null;
+        long hi = 0, lo = 0;
+        for (int i = 0; i < 36; i++) {
+            char c = s.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) { if (c != '-') return null; continue; }
+            int d = c >= '0' && c <= '9' ? c - '0' : c >= 'a' && c <= 'f' ? c - 'a' + 10 : -1;
+            if (d < 0) return null;
+            if (i < 18) hi = hi << 4 | d; else lo = lo << 4 | d;
+        }
+        return new UUID(hi, lo);
+    }
+
+    /*
+      Append-only string <-> int dictionary, so repeated values (task ids referenced by a
+      workspace's sessions) are stored once. Lookups are lock-free; ids are never reused or removed.
+    */
+    static final class StringDict {
+        final ConcurrentHashMap<String,Integer> ids = new ConcurrentHashMap<>();
+        volatile String[] names = new String[16];
+        int size;
+
+        int idOf(String s) {
+            Integer i = ids.get(s);
+            return i != null ? i : add(s);
         }
+
+        synchronized int add(String s) {
+            Integer i = ids.get(s);
+            if (i != null) return i;
+            if (size == names.length) names = Arrays.copyOf(names, size * 2);
+            names[size] = s;
+            ids.put(s, size); // published after the slot is filled
+            return size++;
+        }
+
+        String get(int i) { return names[i]; }
     }
 
     // -------------------- Storage & Paths --------------------
-    static List<Task> taskList = Collections.synchronizedList(new ArrayList<>());
-    static List<PomodoroSession> sessions = Collections.synchronizedList(new ArrayList<>());
+    static final int CHANGE_RING = Integer.getInteger("taskapp.changeRing", 4096); // task changes kept for /tasks?since=
+    static final int MAX_BATCH = Integer.getInteger("taskapp.maxBatch", 100_000); // operations per /tasks/batch request
+    static final int SSE_WRITERS = Integer.getInteger("taskapp.sseWriters", 4);
+    static final int SSE_BUFFER = Integer.getInteger("taskapp.sseBuffer", 256); // queued events per subscriber before it is dropped
+    static final int JSON_BUFFERS = Integer.getInteger("taskapp.jsonBuffers", 64); // idle JsonOut writers kept for reuse
+    static final Broadcaster events = new Broadcaster();
+    static final String[] PRIORITIES = {"High", "Medium", "Low"}; // Task.priority indexes this, in sort order
 
     // Adjust if your folders are in different locations
     static final Path FRONTEND_DIR = Paths.get("../frontend").toAbsolutePath().normalize();
-    static final Path DATA_FILE = Paths.get("tasks.json").toAbsolutePath().normalize();
-    static final Path SESSIONS_FILE = Paths.get("sessions.json").toAbsolutePath().normalize();
+    static final Path DATA_DIR = Paths.get(System.getProperty("taskapp.dataDir", ".")).toAbsolutePath().normalize();
+    static final AssetCache assets = new AssetCache(FRONTEND_DIR);
+    // json = tasks.json / sessions.json snapshots, binary = tasks.bin / sessions.bin (see BinarySnapshot)
+    static final boolean BINARY_SNAPSHOTS = "binary".equalsIgnoreCase(System.getProperty("taskapp.snapshot", "json"));
     static final DateTimeFormatter DF = DateTimeFormatter.ISO_LOCAL_DATE;
+    static volatile long today = LocalDate.now().toEpochDay(); // advanced by scheduleDayRollover
+
+    // journal = append-only log + background snapshots, json = whole-file rewrites by a write-behind thread
+    static final String STORAGE_MODE = System.getProperty("taskapp.storage", "journal");
+    static final int COMPACT_EVERY = Integer.getInteger("taskapp.compactEvery", 5000); // log records between snapshots
+    static final int FLUSH_MILLIS = Integer.getInteger("taskapp.flushMillis", 200); // json mode: changes coalesced per rewrite
+    // json mode only: async = reply once memory is updated, sync = reply after the rewrite covering the change
+    static final String DURABILITY = System.getProperty("taskapp.durability", "async");
+
+    static final String DEFAULT_WORKSPACE = "default"; // lives in DATA_DIR itself, the others in DATA_DIR/workspaces/<name>
+    static final String WORKSPACE_HEADER = "X-Workspace";
+    static final String WORKSPACE_PREFIX = "/w/"; // /w/<name>/... = the same API and frontend in workspace <name>
+    static final java.util.regex.Pattern WORKSPACE_NAME = java.util.regex.Pattern.compile("[a-z0-9_-]{1,64}");
+    static final int MAX_WORKSPACES = Integer.getInteger("taskapp.maxWorkspaces", 256); // loaded at once, least recently used closed first
+    static final long WORKSPACE_IDLE_SECONDS = Long.getLong("taskapp.workspaceIdleSeconds", 600);
+    static final Workspaces workspaces = new Workspaces();
+    // API contexts by path; every one of them runs in a workspace (see route())
+    static final Map<String,HttpHandler> API = new LinkedHashMap<>();
+
+    // virtual = one virtual thread per request (Java 21+, falls back to pool), pool = fixed platform threads
+    static final String EXECUTOR = System.getProperty("taskapp.executor", "virtual");
+    static final int POOL_THREADS = Integer.getInteger("taskapp.threads", Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+    static final int MAX_PENDING = Integer.getInteger("taskapp.maxPending", 1000); // running + queued requests before 503
+    static final int BACKLOG = Integer.getInteger("taskapp.backlog", 0); // TCP accept backlog, 0 = system default
+    static final int DRAIN_SECONDS = Integer.getInteger("taskapp.drainSeconds", 10);
+    static AdmissionExecutor requestExecutor;
+    static HttpServer server;
+    static final AtomicBoolean stopping = new AtomicBoolean();
 
     // -------------------- Main --------------------
     public static void main(String[] args) throws Exception {
-        loadTasksFromDisk();
-        loadSessionsFromDisk();
+        if (args.length == 4 && args[0].equals("--convert")) { convert(args[1], Paths.get(args[2]), Paths.get(args[3])); return; }
+        // a misspelt mode would otherwise run as whichever the checks fall through to, e.g. json storage with async durability
+        for (String[] option : new String[][]{
+                {"taskapp.storage", STORAGE_MODE, "journal", "json"},
+                {"taskapp.durability", DURABILITY, "async", "sync"},
+                {"taskapp.snapshot", System.getProperty("taskapp.snapshot", "json"), "json", "binary"}}) {
+            if (!option[1].equalsIgnoreCase(option[2]) && !option[1].equalsIgnoreCase(option[3])) {
+                System.err.println("Unknown -D" + option[0] + "=" + option[1] + ", expected " + option[2] + " or " + option[3]);
+                System.exit(1);
+                return;
+            }
+        }
+        // the default workspace is loaded up front, the others on their first request
+        Workspace home;
+        try {
+            home = workspaces.acquire(DEFAULT_WORKSPACE);
+        } catch (IOException e) {
+            // starting empty would let the first snapshot overwrite the files that failed to load
+            System.err.println("Cannot open the default workspace in " + DATA_DIR + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        home.release();
+        scheduleDayRollover();
+        assets.start();
 
-        int port = 8083; // change if needed
-        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        int port = Integer.getInteger("taskapp.port", 8083);
+        // the JDK server writes headers and body separately; with Nagle on, the body then waits
+        // for the client's delayed ACK (~40 ms per response)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        requestExecutor = new AdmissionExecutor(newRequestExecutor(), MAX_PENDING);
+        server.setExecutor(requestExecutor);
 
         // API
-        server.createContext("/addTask", TaskApp::handleAddTask);
-        server.createContext("/editTask", TaskApp::handleEditTask);
-        server.createContext("/deleteTask", TaskApp::handleDeleteTask);
-        server.createContext("/toggleComplete", TaskApp::handleToggleComplete);
-        server.createContext("/tasks", TaskApp::handleTasks);
-        server.createContext("/exportCSV", TaskApp::handleExportCSV);
+        route("/addTask", TaskApp::handleAddTask);
+        route("/editTask", TaskApp::handleEditTask);
+        route("/deleteTask", TaskApp::handleDeleteTask);
+        route("/toggleComplete", TaskApp::handleToggleComplete);
+        route("/tasks", TaskApp::handleTasks);
+        route("/tasks/batch", TaskApp::handleBatch);
+        route("/tasks/search", TaskApp::handleSearch);
+        route("/exportCSV", TaskApp::handleExport);
+        route("/export", TaskApp::handleExport);
         // Pomodoro
-        server.createContext("/pomodoro/start", TaskApp::handlePomodoroStart);
-        server.createContext("/pomodoro/stop", TaskApp::handlePomodoroStop);
-        server.createContext("/pomodoro/stats", TaskApp::handlePomodoroStats);
+        route("/pomodoro/start", TaskApp::handlePomodoroStart);
+        route("/pomodoro/stop", TaskApp::handlePomodoroStop);
+        route("/pomodoro/stats", TaskApp::handlePomodoroStats);
+        // push channel
+        route("/events", TaskApp::handleEvents);
+        for (Map.Entry<String,HttpHandler> r : API.entrySet()) server.createContext(r.getKey(), admitted(r.getValue()));
+        // the API and frontend again, with the workspace in the path
+        server.createContext(WORKSPACE_PREFIX, admitted(TaskApp::handleWorkspacePath));
+        // monitoring
+        server.createContext("/metrics", admitted(TaskApp::handleMetrics));
 
         // static frontend
-        server.createContext("/", TaskApp::handleStatic);
+        server.createContext("/", admitted(TaskApp::handleStatic));
 
         server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(server), "shutdown"));
         System.out.println("Server running on http://localhost:" + port + "/");
         System.out.println("Serving frontend from: " + FRONTEND_DIR.toString());
-        System.out.println("Data file: " + DATA_FILE.toString());
-        System.out.println("Sessions file: " + SESSIONS_FILE.toString());
+        System.out.println("Data file: " + home.tasksSnapshotFile().toString());
+        System.out.println("Sessions file: " + home.sessionsSnapshotFile().toString());
+        System.out.println("Storage mode: " + STORAGE_MODE + (home.taskWriter != null ? " (write-behind every " + FLUSH_MILLIS + "ms, durability " + DURABILITY + ")" : ""));
+        System.out.println("Workspaces: " + WORKSPACE_HEADER + " header or " + WORKSPACE_PREFIX + "<name>/, up to " + MAX_WORKSPACES + " loaded, closed after " + WORKSPACE_IDLE_SECONDS + "s idle");
+        System.out.println("Request executor: " + requestExecutor.describe() + ", max pending " + MAX_PENDING);
+    }
+
+    // stop accepting, let in-flight exchanges finish, then flush whatever the journals/writers still hold;
+    // only the first call does anything (an embedding caller may stop the server before the JVM hook runs)
+    static void shutdown(HttpServer server) {
+        if (!stopping.compareAndSet(false, true)) return;
+        System.out.println("Shutting down, draining requests for up to " + DRAIN_SECONDS + "s");
+        events.closeAll(); // open SSE streams would otherwise hold stop() for the whole drain period
+        server.stop(DRAIN_SECONDS);
+        requestExecutor.delegate.shutdown();
+        try { requestExecutor.delegate.awaitTermination(DRAIN_SECONDS, TimeUnit.SECONDS); } catch (InterruptedException ignored) {}
+        workspaces.closeAll();
+    }
+
+    // -------------------- Workspaces --------------------
+    /*
+      Every user (or team) works in a workspace of their own: task store, sessions, stats, lock
+      stripes, journals and snapshot files, the latter under <dataDir>/workspaces/<name>/. The
+      "default" workspace keeps <dataDir> itself, so data from before workspaces existed is
+      simply the default workspace. A request names its workspace with the X-Workspace header
+      or a /w/<name>/ path prefix, which also serves the frontend, so a browser can open
+      /w/<name>/ directly. Workspaces only share the request executor and the SSE writers: one
+      user's writes never wait for another's locks or fsyncs.
+
+      A workspace is loaded by its first request and closed again (journals and writers
+      flushed, its memory left to the GC) after taskapp.workspaceIdleSeconds without requests,
+      or earlier, least recently used first, while more than taskapp.maxWorkspaces are loaded.
+      Requests pin their workspace, so it is never closed under them; one that arrives while
+      it is being closed waits for the flush and then loads it again from disk.
+    */
+    static final class Workspace {
+        final String name;
+        final Path dir, dataFile, sessionsFile, tasksJournal, sessionsJournal, tasksBin, sessionsBin;
+        final TaskStore tasks;
+        final SessionStore sessions = new SessionStore();
+        final PomodoroStats stats = new PomodoroStats();
+        Journal taskJournal, sessionJournal;
+        WriteBehind taskWriter, sessionWriter;
+        int users; // requests holding it
+        volatile long lastUsed = System.nanoTime();
+        boolean loaded, closed;
+
+        Workspace(String name) {
+            this.name = name;
+            this.dir = name.equals(DEFAULT_WORKSPACE) ? DATA_DIR : DATA_DIR.resolve("workspaces").resolve(name);
+            this.dataFile = dir.resolve("tasks.json");
+            this.sessionsFile = dir.resolve("sessions.json");
+            this.tasksJournal = dir.resolve("tasks.journal");
+            this.sessionsJournal = dir.resolve("sessions.journal");
+            this.tasksBin = dir.resolve("tasks.bin");
+            this.sessionsBin = dir.resolve("sessions.bin");
+            this.tasks = new TaskStore();
+        }
+
+        // false once it has been closed: the caller drops it from the registry and starts over
+        synchronized boolean acquire() throws IOException {
+            if (closed) return false;
+            if (!loaded) {
+                try { open(); } catch (IOException e) { closed = true; closePersistence(); throw e; }
+                loaded = true;
+                workspaces.loads.increment();
+            }
+            users++;
+            lastUsed = System.nanoTime();
+            return true;
+        }
+
+        synchronized void release() { users--; lastUsed = System.nanoTime(); }
+
+        void open() throws IOException {
+            Files.createDirectories(dir);
+            loadTasksFromDisk(this);
+            loadSessionsFromDisk(this);
+            if ("journal".equalsIgnoreCase(STORAGE_MODE)) {
+                taskJournal = new Journal(tasksJournal, () -> snapshotTasks(this));
+                sessionJournal = new Journal(sessionsJournal, () -> snapshotSessions(this));
+            } else {
+                // logs left by an earlier journal-mode run were replayed above; fold them into the
+                // JSON files now so they aren't replayed over newer changes on the next load
+                Journal.retire(tasksJournal, () -> snapshotTasks(this));
+                Journal.retire(sessionsJournal, () -> snapshotSessions(this));
+                taskWriter = new WriteBehind(tasksSnapshotFile(), () -> snapshotTasks(this), FLUSH_MILLIS);
+                sessionWriter = new WriteBehind(sessionsSnapshotFile(), () -> snapshotSessions(this), FLUSH_MILLIS);
+            }
+        }
+
+        // flushes everything to disk; unless forced (shutdown), only when no request holds it
+        synchronized boolean close(boolean force) {
+            if (closed || (users > 0 && !force)) return false;
+            closed = true;
+            closePersistence();
+            return true;
+        }
+
+        void closePersistence() {
+            if (taskJournal != null) taskJournal.close();
+            if (sessionJournal != null) sessionJournal.close();
+            if (taskWriter != null) taskWriter.close();
+            if (sessionWriter != null) sessionWriter.close();
+        }
+
+        Path tasksSnapshotFile() { return BINARY_SNAPSHOTS ? tasksBin : dataFile; }
+
+        Path sessionsSnapshotFile() { return BINARY_SNAPSHOTS ? sessionsBin : sessionsFile; }
+
+        // adds its unwritten records / changes per file name
+        void backlog(Map<String,Long> into) {
+            Journal tj = taskJournal, sj = sessionJournal;
+            WriteBehind tw = taskWriter, sw = sessionWriter;
+            if (tj != null) into.merge(tj.file.getFileName().toString(), (long) tj.backlog(), Long::sum);
+            if (sj != null) into.merge(sj.file.getFileName().toString(), (long) sj.backlog(), Long::sum);
+            if (tw != null) into.merge(tw.file.getFileName().toString(), tw.backlog(), Long::sum);
+            if (sw != null) into.merge(sw.file.getFileName().toString(), sw.backlog(), Long::sum);
+        }
+    }
+
+    // the loaded workspaces, and the thread that closes idle ones
+    static final class Workspaces {
+        final ConcurrentHashMap<String,Workspace> loaded = new ConcurrentHashMap<>();
+        final LongAdder loads = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+        final ScheduledExecutorService evictor;
+
+        Workspaces() {
+            evictor = Executors.newSingleThreadScheduledExecutor(r -> { Thread t = new Thread(r, "workspace-evictor"); t.setDaemon(true); return t; });
+            long every = Math.max(1, Math.min(60, WORKSPACE_IDLE_SECONDS / 4));
+            evictor.scheduleWithFixedDelay(this::evictIdle, every, every, TimeUnit.SECONDS);
+        }
+
+        // loads it if needed and pins it until release()
+        Workspace acquire(String name) throws IOException {
+            while (true) {
+                Workspace w = loaded.get(name);
+                if (w == null) w = loaded.computeIfAbsent(name, Workspace::new);
+                boolean ok;
+                try { ok = w.acquire(); } catch (IOException e) { loaded.remove(name, w); throw e; }
+                if (ok) {
+                    if (loaded.size() > MAX_WORKSPACES) evictor.execute(this::evictLeastRecent);
+                    return w;
+                }
+                loaded.remove(name, w); // closed between the lookup and acquire()
+            }
+        }
+
+        void evictIdle() {
+            long cutoff = System.nanoTime() - WORKSPACE_IDLE_SECONDS * 1_000_000_000L;
+            for (Workspace w : loaded.values()) if (w.lastUsed - cutoff < 0) evict(w);
+            evictLeastRecent();
+        }
+
+        void evictLeastRecent() {
+            if (loaded.size() <= MAX_WORKSPACES) return;
+            // lastUsed keeps moving, so sort a copy of it
+            List<Map.Entry<Long,Workspace>> lru = new ArrayList<>();
+            for (Workspace w : loaded.values()) lru.add(Map.entry(w.lastUsed, w));
+            lru.sort(Map.Entry.comparingByKey());
+            for (Map.Entry<Long,Workspace> e : lru) {
+                if (loaded.size() <= MAX_WORKSPACES) break;
+                evict(e.getValue());
+            }
+        }
+
+        void evict(Workspace w) {
+            try {
+                if (w.close(false)) { loaded.remove(w.name, w); evictions.increment(); }
+            } catch (RuntimeException e) {
+                System.err.println("Failed to close workspace " + w.name + ": " + e.getMessage());
+            }
+        }
+
+        void closeAll() {
+            evictor.shutdownNow();
+            for (Workspace w : loaded.values()) w.close(true);
+        }
+    }
+
+    interface WorkspaceHandler { void handle(HttpExchange ex, Workspace w) throws IOException; }
+
+    static void route(String path, WorkspaceHandler h) { API.put(path, inWorkspace(h)); }
+
+    // resolves the request's workspace and holds it for the duration of the handler
+    static HttpHandler inWorkspace(WorkspaceHandler h) {
+        return ex -> {
+            String name = workspaceName(ex);
+            // outside /w/<name>/ the X-Workspace header picks the data, so caches must key on it too
+            if (!ex.getRequestURI().normalize().getPath().startsWith(WORKSPACE_PREFIX)) ex.getResponseHeaders().add("Vary", WORKSPACE_HEADER);
+            if (name == null) { sendPlain(ex,400,"Workspace names are 1-64 letters, digits, '-' or '_'"); return; }
+            Workspace w;
+            try {
+                w = workspaces.acquire(name);
+            } catch (IOException e) {
+                System.err.println("Failed to open workspace " + name + ": " + e.getMessage());
+                sendPlain(ex,503,"Workspace unavailable"); return;
+            }
+            try {
+                h.handle(ex, w);
+            } catch (CommitFailed e) {
+                // the change is in memory but not on disk; the journal keeps retrying it
+                System.err.println("Workspace " + name + ": " + e.getMessage());
+                sendPlain(ex,503,"Change not saved: " + e.getMessage());
+            } finally {
+                w.release();
+            }
+        };
+    }
+
+    // from the /w/<name>/ prefix, else the X-Workspace header, else the default; null if malformed
+    static String workspaceName(HttpExchange ex) {
+        String path = ex.getRequestURI().normalize().getPath(), name;
+        if (path != null && path.startsWith(WORKSPACE_PREFIX)) {
+            int end = path.indexOf('/', WORKSPACE_PREFIX.length());
+            name = path.substring(WORKSPACE_PREFIX.length(), end < 0 ? path.length() : end);
+        } else {
+            name = ex.getRequestHeaders().getFirst(WORKSPACE_HEADER);
+            if (name == null) return DEFAULT_WORKSPACE;
+        }
+        name = name.trim().toLowerCase();
+        return WORKSPACE_NAME.matcher(name).matches() ? name : null;
+    }
+
+    // the request path without its /w/<name> prefix
+    static String localPath(HttpExchange ex) {
+        String path = ex.getRequestURI().normalize().getPath();
+        if (path == null || !path.startsWith(WORKSPACE_PREFIX)) return path;
+        int end = path.indexOf('/', WORKSPACE_PREFIX.length());
+        return end < 0 ? "/" : path.substring(end);
+    }
+
+    // the API context that would serve path (longest prefix, as HttpServer matches), null for static files
+    static String apiRoute(String path) {
+        String best = null;
+        if (path != null) for (String p : API.keySet()) if (path.startsWith(p) && (best == null || p.length() > best.length())) best = p;
+        return best;
+    }
+
+    // /w/<name>/...: dispatches to the same handlers as the unprefixed paths
+    static void handleWorkspacePath(HttpExchange ex) throws IOException {
+        String path = ex.getRequestURI().getRawPath();
+        if (path.indexOf('/', WORKSPACE_PREFIX.length()) < 0) {
+            // /w/<name> -> /w/<name>/, or the frontend's relative URLs would miss the workspace
+            ex.getRequestBody().close();
+            ex.getResponseHeaders().add("Location", path + "/");
+            ex.sendResponseHeaders(301,-1); ex.close(); return;
+        }
+        String route = apiRoute(localPath(ex));
+        if (route != null) API.get(route).handle(ex);
+        else handleStatic(ex);
+    }
+
+    // -------------------- Request execution --------------------
+    static ExecutorService newRequestExecutor() {
+        if ("virtual".equalsIgnoreCase(EXECUTOR)) {
+            try {
+                // looked up reflectively so the file still compiles and runs on Java 17
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Virtual threads unavailable on this JVM, using a pool of " + POOL_THREADS + " threads");
+            }
+        }
+        AtomicLong n = new AtomicLong();
+        return Executors.newFixedThreadPool(POOL_THREADS, r -> new Thread(r, "http-" + n.incrementAndGet()));
+    }
+
+    /*
+      Admission control in front of the request executor. At most maxPending exchanges may be
+      running or queued; past that, execute() runs the exchange on the HttpServer dispatcher
+      thread with SHED set, and admitted() answers it with an immediate 503 instead of doing
+      the work. That answer is headers only with Connection: close, so the server drops the
+      connection without reading the rest of the request body: a large or slow upload can't
+      hold up the dispatcher. It never blocks on a full queue and callers get a clear signal.
+    */
+    static final class AdmissionExecutor implements Executor {
+        static final ThreadLocal<Boolean> SHED = new ThreadLocal<>();
+        final ExecutorService delegate;
+        final Semaphore permits;
+        final int maxPending;
+        final LongAdder shedCount = new LongAdder();
+
+        AdmissionExecutor(ExecutorService delegate, int maxPending) {
+            this.delegate = delegate;
+            this.maxPending = maxPending;
+            this.permits = new Semaphore(maxPending);
+        }
+
+        public void execute(Runnable r) {
+            if (!permits.tryAcquire()) { shed(r); return; }
+            try {
+                delegate.execute(() -> { try { r.run(); } finally { permits.release(); } });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                shed(r); // shutting down
+            }
+        }
+
+        void shed(Runnable r) {
+            shedCount.increment();
+            SHED.set(Boolean.TRUE);
+            try { r.run(); } finally { SHED.remove(); }
+        }
+
+        int pending() { return maxPending - permits.availablePermits(); }
+
+        String describe() { return delegate instanceof ThreadPoolExecutor ? "pool of " + ((ThreadPoolExecutor) delegate).getCorePoolSize() + " threads" : "virtual threads"; }
+    }
+
+    // every context goes through here, which also times it for /metrics
+    static HttpHandler admitted(HttpHandler h) {
+        return ex -> {
+            String path = ex.getHttpContext().getPath();
+            if (path.equals(WORKSPACE_PREFIX)) { String r = apiRoute(localPath(ex)); path = r != null ? r : "/"; }
+            Endpoint ep = ENDPOINTS.get(path);
+            if (ep == null) ep = ENDPOINTS.computeIfAbsent(path, Endpoint::new);
+            long start = System.nanoTime();
+            try {
+                if (AdmissionExecutor.SHED.get() != null) {
+                    // no body: closing a request stream drains the upload, a -1 length skips that
+                    ex.getResponseHeaders().add("Retry-After", "1");
+                    ex.getResponseHeaders().add("Connection", "close");
+                    ex.sendResponseHeaders(503, -1);
+                    ex.close();
+                    return;
+                }
+                h.handle(ex);
+            } finally {
+                ep.record(ex.getResponseCode(), System.nanoTime() - start);
+            }
+        };
+    }
+
+    // -------------------- Metrics --------------------
+    /*
+      GET /metrics: request counts and latencies per endpoint, persistence timings, queue depths,
+      store sizes and JVM memory/GC, in the Prometheus text format (0.0.4). Recording a request
+      does not allocate: an endpoint's counters and histogram are created the first time its
+      context is hit, after that it is a map hit on the context's own path string plus a few
+      atomic adds. Rendering the page is where the allocation happens.
+    */
+    static final ConcurrentHashMap<String,Endpoint> ENDPOINTS = new ConcurrentHashMap<>(); // context path -> metrics
+    static final ConcurrentHashMap<String,Timing> TIMINGS = new ConcurrentHashMap<>(); // "op file" -> timing
+    static final ConcurrentHashMap<String,long[]> LOADS = new ConcurrentHashMap<>(); // store -> {records, replayed, bytes, nanos}
+    static final String[] LE = {"0.0001", "0.00025", "0.0005", "0.001", "0.0025", "0.005", "0.01", "0.025", "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5", "10"};
+    static final String[] QUANTILES = {"0.5", "0.9", "0.99", "0.999"};
+
+    static final class Endpoint {
+        final String path;
+        final LongAdder[] byClass = new LongAdder[6]; // status / 100; 0 = no response was sent
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        Endpoint(String path) { this.path = path; for (int i = 0; i < byClass.length; i++) byClass[i] = new LongAdder(); }
+
+        void record(int status, long nanos) {
+            byClass[status >= 100 && status < 600 ? status / 100 : 0].increment();
+            latency.record(nanos);
+        }
+    }
+
+    // size and duration of the writes to one file: op "snapshot" (writeAtomically) or "journal" (a group commit)
+    static final class Timing {
+        final String op, file;
+        final LongAdder bytes = new LongAdder();
+        final LatencyHistogram duration = new LatencyHistogram();
+
+        Timing(String op, String file) { this.op = op; this.file = file; }
+
+        void record(long bytes, long nanos) { this.bytes.add(bytes); duration.record(nanos); }
+    }
+
+    static Timing timing(String op, Path file) {
+        String name = file.getFileName().toString();
+        return TIMINGS.computeIfAbsent(op + " " + name, k -> new Timing(op, name));
+    }
+
+    /*
+      Latency histogram in the HdrHistogram layout: values under 128 ns get a counter each, and
+      every power of two above that is split into 64 linear sub-buckets, so any value is kept to
+      within 1/64 (~1.6%) in 3712 fixed counters. record() is an index computation and a few
+      atomic updates; readers copy the counters and may see a record half applied.
+    */
+    static final class LatencyHistogram {
+        static final int SUB_BITS = 7, LINEAR = 1 << SUB_BITS, HALF = LINEAR >> 1;
+        static final int SIZE = LINEAR + (63 - SUB_BITS) * HALF;
+        final AtomicLongArray counts = new AtomicLongArray(SIZE);
+        final LongAdder sumNanos = new LongAdder();
+        final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long v = Math.max(0, nanos), m;
+            counts.incrementAndGet(index(v));
+            sumNanos.add(v);
+            while (v > (m = max.get()) && !max.compareAndSet(m, v)) { }
+        }
+
+        long[] snapshot() {
+            long[] c = new long[SIZE];
+            for (int i = 0; i < SIZE; i++) c[i] = counts.get(i);
+            return c;
+        }
+
+        static int index(long v) {
+            if (v < LINEAR) return (int) v;
+            int shift = 64 - Long.numberOfLeadingZeros(v) - SUB_BITS; // keeps SUB_BITS significant bits
+            return LINEAR + (shift - 1) * HALF + (int) (v >>> shift) - HALF;
+        }
+
+        static long lowest(int i) {
+            if (i < LINEAR) return i;
+            int k = i - LINEAR, shift = k / HALF + 1;
+            return (long) (k % HALF + HALF) << shift;
+        }
+
+        // value at quantile q of a snapshot holding total values: the middle of its bucket, at most max
+        static long quantile(long[] c, long total, double q, long max) {
+            long rank = Math.max(1, (long) Math.ceil(q * total)), seen = 0;
+            for (int i = 0; i < c.length; i++) {
+                seen += c[i];
+                if (seen >= rank) return Math.min(max, i + 1 < c.length ? (lowest(i) + lowest(i + 1) - 1) / 2 : max);
+            }
+            return max;
+        }
+    }
+
+    static void handleMetrics(HttpExchange ex) throws IOException {
+        if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) { ex.sendResponseHeaders(405,-1); ex.close(); return; }
+        ex.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        addCommonCors(ex);
+        ex.sendResponseHeaders(200, 0);
+        try (OutputStream os = ex.getResponseBody()) {
+            Writer w = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), 8192);
+            writeMetrics(w);
+            w.flush();
+        }
+    }
+
+    static void writeMetrics(Writer w) throws IOException {
+        List<Endpoint> eps = new ArrayList<>(ENDPOINTS.values());
+        eps.sort(Comparator.comparing(e -> e.path));
+        family(w, "taskapp_http_requests_total", "counter", "Requests handled by endpoint and status class (none: no response sent)");
+        for (Endpoint e : eps) {
+            for (int c = 0; c < e.byClass.length; c++) {
+                long n = e.byClass[c].sum();
+                if (n > 0) sample(w, "taskapp_http_requests_total", labels("endpoint", e.path, "code", c == 0 ? "none" : c + "xx"), n);
+            }
+        }
+        family(w, "taskapp_http_request_duration_seconds", "histogram", "Time from admission to the handler returning");
+        for (Endpoint e : eps) histogram(w, "taskapp_http_request_duration_seconds", labels("endpoint", e.path), e.latency);
+        family(w, "taskapp_http_request_duration_quantile_seconds", "gauge", "Request latency quantiles since startup, within 1.6%");
+        for (Endpoint e : eps) quantiles(w, "taskapp_http_request_duration_quantile_seconds", labels("endpoint", e.path), e.latency);
+
+        List<Timing> timings = new ArrayList<>(TIMINGS.values());
+        timings.sort(Comparator.comparing(t -> t.op + " " + t.file));
+        family(w, "taskapp_persist_bytes_total", "counter", "Bytes written by snapshots and journal group commits");
+        for (Timing t : timings) sample(w, "taskapp_persist_bytes_total", labels("op", t.op, "file", t.file), t.bytes.sum());
+        family(w, "taskapp_persist_duration_seconds", "histogram", "Duration of each snapshot (write, fsync, rename) and journal group commit (write, fsync)");
+        for (Timing t : timings) histogram(w, "taskapp_persist_duration_seconds", labels("op", t.op, "file", t.file), t.duration);
+        family(w, "taskapp_load_duration_seconds", "gauge", "Time the most recent workspace load took per store");
+        for (Map.Entry<String,long[]> e : LOADS.entrySet()) sample(w, "taskapp_load_duration_seconds", labels("store", e.getKey()), e.getValue()[3] / 1e9);
+        family(w, "taskapp_load_bytes", "gauge", "Snapshot and journal bytes read by the most recent workspace load per store");
+        for (Map.Entry<String,long[]> e : LOADS.entrySet()) sample(w, "taskapp_load_bytes", labels("store", e.getKey()), e.getValue()[2]);
+        family(w, "taskapp_load_records", "gauge", "Records read by the most recent workspace load per store and source");
+        for (Map.Entry<String,long[]> e : LOADS.entrySet()) {
+            sample(w, "taskapp_load_records", labels("store", e.getKey(), "source", "snapshot"), e.getValue()[0]);
+            sample(w, "taskapp_load_records", labels("store", e.getKey(), "source", "journal"), e.getValue()[1]);
+        }
+
+        if (requestExecutor != null) {
+            gauge(w, "taskapp_requests_pending", "Requests running or queued for a worker", requestExecutor.pending());
+            gauge(w, "taskapp_requests_max_pending", "Pending requests beyond which new ones get 503", requestExecutor.maxPending);
+            family(w, "taskapp_requests_shed_total", "counter", "Requests answered 503 because the server was busy or shutting down");
+            sample(w, "taskapp_requests_shed_total", "", requestExecutor.shedCount.sum());
+        }
+        List<Workspace> loaded = new ArrayList<>(workspaces.loaded.values());
+        Map<String,Long> backlog = new TreeMap<>();
+        long taskCount = 0, tagCount = 0, sessionCount = 0, open = 0;
+        for (Workspace ws : loaded) {
+            ws.backlog(backlog);
+            taskCount += ws.tasks.size();
+            tagCount += ws.tasks.byTag.size();
+            sessionCount += ws.sessions.size();
+            synchronized (ws.sessions) { open += ws.sessions.open.size(); }
+        }
+        family(w, "taskapp_persist_backlog", "gauge", "Journal records waiting for the writer / unflushed write-behind changes, over all workspaces");
+        for (Map.Entry<String,Long> e : backlog.entrySet()) sample(w, "taskapp_persist_backlog", labels("file", e.getKey()), e.getValue());
+        gauge(w, "taskapp_sse_subscribers", "Open /events streams", events.subscribers.size());
+        gauge(w, "taskapp_workspaces_loaded", "Workspaces in memory", loaded.size());
+        gauge(w, "taskapp_workspaces_max", "Loaded workspaces beyond which the least recently used are closed", MAX_WORKSPACES);
+        family(w, "taskapp_workspace_loads_total", "counter", "Workspaces loaded from disk");
+        sample(w, "taskapp_workspace_loads_total", "", workspaces.loads.sum());
+        family(w, "taskapp_workspace_evictions_total", "counter", "Workspaces closed for being idle or least recently used");
+        sample(w, "taskapp_workspace_evictions_total", "", workspaces.evictions.sum());
+        gauge(w, "taskapp_tasks", "Tasks in the loaded workspaces", taskCount);
+        gauge(w, "taskapp_tags", "Distinct tags per loaded workspace, summed", tagCount);
+        gauge(w, "taskapp_sessions", "Pomodoro sessions in the loaded workspaces", sessionCount);
+        gauge(w, "taskapp_sessions_open", "Pomodoro sessions started and not stopped in the loaded workspaces", open);
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage(), nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        family(w, "jvm_memory_bytes_used", "gauge", "Used bytes of a JVM memory area");
+        sample(w, "jvm_memory_bytes_used", labels("area", "heap"), heap.getUsed());
+        sample(w, "jvm_memory_bytes_used", labels("area", "nonheap"), nonHeap.getUsed());
+        family(w, "jvm_memory_bytes_committed", "gauge", "Committed bytes of a JVM memory area");
+        sample(w, "jvm_memory_bytes_committed", labels("area", "heap"), heap.getCommitted());
+        sample(w, "jvm_memory_bytes_committed", labels("area", "nonheap"), nonHeap.getCommitted());
+        family(w, "jvm_memory_bytes_max", "gauge", "Max bytes of a JVM memory area (-1 if unbounded)");
+        sample(w, "jvm_memory_bytes_max", labels("area", "heap"), heap.getMax());
+        sample(w, "jvm_memory_bytes_max", labels("area", "nonheap"), nonHeap.getMax());
+        family(w, "jvm_memory_pool_bytes_used", "gauge", "Used bytes of a JVM memory pool");
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) sample(w, "jvm_memory_pool_bytes_used", labels("pool", pool.getName()), pool.getUsage().getUsed());
+        family(w, "jvm_gc_collection_seconds", "summary", "Time spent in a garbage collector");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample(w, "jvm_gc_collection_seconds_count", labels("gc", gc.getName()), gc.getCollectionCount());
+            sample(w, "jvm_gc_collection_seconds_sum", labels("gc", gc.getName()), gc.getCollectionTime() / 1e3);
+        }
+        gauge(w, "jvm_threads_current", "Live JVM threads", ManagementFactory.getThreadMXBean().getThreadCount());
+        gauge(w, "jvm_threads_daemon", "Live JVM daemon threads", ManagementFactory.getThreadMXBean().getDaemonThreadCount());
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean) {
+            long cpu = ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+            family(w, "process_cpu_seconds_total", "counter", "CPU time used by the process");
+            sample(w, "process_cpu_seconds_total", "", cpu / 1e9);
+        }
+        gauge(w, "process_start_time_seconds", "Start time of the process since the epoch", ManagementFactory.getRuntimeMXBean().getStartTime() / 1e3);
+    }
+
+    static void family(Writer w, String name, String type, String help) throws IOException {
+        w.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        w.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    static void gauge(Writer w, String name, String help, double value) throws IOException {
+        family(w, name, "gauge", help);
+        sample(w, name, "", value);
+    }
+
+    static void sample(Writer w, String name, String labels, double value) throws IOException {
+        w.append(name);
+        if (!labels.isEmpty()) w.append('{').append(labels).append('}');
+        w.append(' ').append(value == (long) value ? Long.toString((long) value) : Double.toString(value)).append('\n');
+    }
+
+    // k1="v1",k2="v2"... with values escaped as the text format requires
+    static String labels(String... kv) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < kv.length; i += 2) {
+            if (i > 0) sb.append(',');
+            sb.append(kv[i]).append("=\"").append(kv[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+        }
+        return sb.toString();
+    }
+
+    // cumulative counts at the LE bounds. A fine bucket counts toward a bound only if it ends at
+    // or below it, so a le count never includes slower requests; the bucket straddling the bound
+    // (1/64 of its value wide) goes to the next one.
+    static void histogram(Writer w, String name, String labels, LatencyHistogram h) throws IOException {
+        long[] c = h.snapshot();
+        long cum = 0;
+        int i = 0;
+        for (String le : LE) {
+            long limit = (long) (Double.parseDouble(le) * 1e9);
+            while (i + 1 < c.length && LatencyHistogram.lowest(i + 1) - 1 <= limit) cum += c[i++];
+            sample(w, name + "_bucket", labels + ",le=\"" + le + "\"", cum);
+        }
+        while (i < c.length) cum += c[i++];
+        sample(w, name + "_bucket", labels + ",le=\"+Inf\"", cum);
+        sample(w, name + "_sum", labels, h.sumNanos.sum() / 1e9);
+        sample(w, name + "_count", labels, cum);
+    }
+
+    static void quantiles(Writer w, String name, String labels, LatencyHistogram h) throws IOException {
+        long[] c = h.snapshot();
+        long total = 0;
+        for (long n : c) total += n;
+        if (total == 0) return;
+        long max = h.max.get();
+        for (String q : QUANTILES) sample(w, name, labels + ",quantile=\"" + q + "\"", LatencyHistogram.quantile(c, total, Double.parseDouble(q), max) / 1e9);
+        sample(w, name, labels + ",quantile=\"1\"", max / 1e9);
     }
 
     // -------------------- API Handlers --------------------
-    static void handleAddTask(HttpExchange ex) throws IOException {
+    static void handleAddTask(HttpExchange ex, Workspace w) throws IOException {
         if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) { ex.sendResponseHeaders(405,-1); ex.close(); return; }
         String body = new BufferedReader(new InputStreamReader(ex.getRequestBody(), StandardCharsets.UTF_8)).lines().collect(Collectors.joining());
         Map<String,String> map = parseForm(body);
@@ -113,12 +893,14 @@ public class TaskApp {
         String tags = urlDecode(map.getOrDefault("tags",""));
         String id = UUID.randomUUID().toString();
         Task t = new Task(id, title, due, tags);
-        synchronized(taskList){ taskList.add(t); }
-        saveTasksToDisk();
+        long seq, v;
+        synchronized(w.tasks.lockFor(id)){ v = w.tasks.put(t); seq = journalTask(w, t); }
+        commitTasks(w, seq);
+        publishTask(w, t, v);
         sendPlain(ex,200,"OK");
     }
 
-    static void handleEditTask(HttpExchange ex) throws IOException {
+    static void handleEditTask(HttpExchange ex, Workspace w) throws IOException {
         if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) { ex.sendResponseHeaders(405,-1); ex.close(); return; }
         String body = new BufferedReader(new InputStreamReader(ex.getRequestBody(), StandardCharsets.UTF_8)).lines().collect(Collectors.joining());
         Map<String,String> map = parseForm(body);
@@ -126,89 +908,368 @@ public class TaskApp {
         String title = urlDecode(map.getOrDefault("title",""));
         String due = urlDecode(map.getOrDefault("due",""));
         String tags = urlDecode(map.getOrDefault("tags",""));
-        synchronized(taskList){
-            for(Task t: taskList){
-                if(t.id.equals(id)){
-                    if(!title.isEmpty()) t.title = title;
-                    if(!due.isEmpty()) t.due = due;
-                    t.tags = tags;
-                    t.computeMeta();
-                    break;
-                }
+        long seq = 0, v = 0;
+        Task t = null;
+        synchronized(w.tasks.lockFor(id)){
+            Task cur = w.tasks.get(id);
+            if(cur != null){
+                t = cur.copy();
+                if(!title.isEmpty()) t.title = title;
+                if(!due.isEmpty()) t.setDue(due);
+                t.setTags(tags);
+                t.computeMeta();
+                v = w.tasks.put(t);
+                seq = journalTask(w, t);
             }
         }
-        saveTasksToDisk();
+        commitTasks(w, seq);
+        publishTask(w, t, v);
         sendPlain(ex,200,"OK");
     }
 
-    static void handleDeleteTask(HttpExchange ex) throws IOException {
+    static void handleDeleteTask(HttpExchange ex, Workspace w) throws IOException {
         if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) { ex.sendResponseHeaders(405,-1); ex.close(); return; }
         String body = new BufferedReader(new InputStreamReader(ex.getRequestBody(), StandardCharsets.UTF_8)).lines().collect(Collectors.joining());
         Map<String,String> map = parseForm(body);
         String id = urlDecode(map.getOrDefault("id",""));
-        synchronized(taskList){ taskList.removeIf(t -> t.id.equals(id)); }
-        saveTasksToDisk();
+        long seq = 0, v;
+        synchronized(w.tasks.lockFor(id)){ v = w.tasks.remove(id); if (v != 0) seq = journalTaskDeleted(w, id); }
+        commitTasks(w, seq);
+        publishTaskDeleted(w, id, v);
         sendPlain(ex,200,"OK");
     }
 
-    static void handleToggleComplete(HttpExchange ex) throws IOException {
+    static void handleToggleComplete(HttpExchange ex, Workspace w) throws IOException {
         if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) { ex.sendResponseHeaders(405,-1); ex.close(); return; }
         String body = new BufferedReader(new InputStreamReader(ex.getRequestBody(), StandardCharsets.UTF_8)).lines().collect(Collectors.joining());
         Map<String,String> map = parseForm(body);
         String id = urlDecode(map.getOrDefault("id",""));
-        synchronized(taskList){
-            for(Task t: taskList) if(t.id.equals(id)){ t.completed = !t.completed; break; }
+        long seq = 0, v = 0;
+        Task t = null;
+        synchronized(w.tasks.lockFor(id)){
+            Task cur = w.tasks.get(id);
+            if(cur != null){ t = cur.copy(); t.completed = !t.completed; v = w.tasks.put(t); seq = journalTask(w, t); }
         }
-        saveTasksToDisk();
+        commitTasks(w, seq);
+        publishTask(w, t, v);
         sendPlain(ex,200,"OK");
     }
 
-    static void handleTasks(HttpExchange ex) throws IOException {
+    /*
+      POST /tasks/batch with a JSON array of operations:
+        {"op":"add","title":..,"due":..,"tags":..}  {"op":"edit","id":..,"title":..,"due":..,"tags":..}
+        {"op":"toggle","id":..}  {"op":"delete","id":..}
+      The body is parsed as a stream; a malformed body is rejected with 400 before anything is
+      applied. The operations are then applied in order while holding every store stripe, so no
+      other writer interleaves, and persisted once. The reply lists one result per operation.
+      On disk the batch is all or nothing: its changes are journaled as a single record, which
+      replay applies whole or skips whole, and snapshots and /export copy their rows under every
+      stripe, so they hold all of a batch or none of it. In memory it is atomic against other
+      writers only. Readers don't take stripes: GET /tasks, /tasks/search and ?since= can see
+      part of a batch while it is being applied, and every operation gets its own version and
+      SSE event.
+    */
+    static void handleBatch(HttpExchange ex, Workspace w) throws IOException {
+        if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) { ex.sendResponseHeaders(405,-1); ex.close(); return; }
+        List<String[]> ops = new ArrayList<>();
+        try (JsonIn in = new JsonIn(Channels.newChannel(ex.getRequestBody()))) {
+            in.beginArray();
+            String[] v = new String[BATCH_FIELDS.length];
+            while (in.hasNext()) {
+                if (ops.size() >= MAX_BATCH) { sendPlain(ex,413,"Batch larger than " + MAX_BATCH + " operations"); return; }
+                in.readObject(BATCH_FIELDS, v);
+                ops.add(v.clone());
+            }
+            in.endArray();
+        } catch (IOException | RuntimeException e) {
+            sendPlain(ex,400,"Malformed batch: " + e.getMessage()); return;
+        }
+        String[] status = new String[ops.size()];
+        String[] ids = new String[ops.size()];
+        String[] deleted = new String[ops.size()];
+        long[] seq = new long[1];
+        long[] versions = new long[ops.size()];
+        Task[] changed = new Task[ops.size()];
+        String defaultDue = LocalDate.now().format(DF);
+        w.tasks.withAllStripes(() -> {
+            for (int i = 0; i < ops.size(); i++) {
+                String[] op = ops.get(i);
+                String id = op[1];
+                Task cur = id == null ? null : w.tasks.get(id);
+                Task t = null;
+                switch (op[0] == null ? "" : op[0]) {
+                    case "add":
+                        id = UUID.randomUUID().toString();
+                        t = new Task(id, op[2] != null ? op[2] : "Untitled", op[3] != null ? op[3] : defaultDue, op[4]);
+                        break;
+                    case "edit":
+                        if (cur == null) break;
+                        t = cur.copy();
+                        if (op[2] != null && !op[2].isEmpty()) t.title = op[2];
+                        if (op[3] != null && !op[3].isEmpty()) t.setDue(op[3]);
+                        if (op[4] != null) t.setTags(op[4]);
+                        t.computeMeta();
+                        break;
+                    case "toggle":
+                        if (cur == null) break;
+                        t = cur.copy();
+                        t.completed = !t.completed;
+                        break;
+                    case "delete":
+                        if (cur == null) break;
+                        versions[i] = w.tasks.remove(id);
+                        deleted[i] = id;
+                        status[i] = "ok";
+                        break;
+                    default:
+                        status[i] = "invalid";
+                        continue;
+                }
+                if (t != null) { versions[i] = w.tasks.put(t); changed[i] = t; status[i] = "ok"; }
+                else if (status[i] == null) status[i] = "not_found";
+                ids[i] = id;
+            }
+            seq[0] = journalBatch(w, changed, deleted);
+        });
+        commitTasks(w, seq[0]);
+        for (int i = 0; i < versions.length; i++) {
+            if (changed[i] != null) publishTask(w, changed[i], versions[i]);
+            else publishTaskDeleted(w, ids[i], versions[i]);
+        }
+        sendJson(ex, 200, j -> {
+            j.beginObject();
+            j.name("version").value(w.tasks.version());
+            j.name("results").beginArray();
+            for (int i = 0; i < status.length; i++) {
+                j.beginObject();
+                j.name("index").value(i);
+                j.name("op").value(ops.get(i)[0]);
+                j.name("status").value(status[i]);
+                if (ids[i] != null) j.name("id").value(ids[i]);
+                j.endObject();
+            }
+            j.endArray();
+            j.endObject();
+        });
+    }
+
+    static void handleTasks(HttpExchange ex, Workspace w) throws IOException {
         if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) { ex.sendResponseHeaders(405,-1); ex.close(); return; }
-        synchronized(taskList){ taskList.forEach(Task::computeMeta); }
-        List<Task> sorted;
-        synchronized(taskList){
-            sorted = taskList.stream()
-                .sorted(Comparator.comparing((Task t)->priorityRank(t.priority)).thenComparingLong(t->t.daysLeft))
-                .collect(Collectors.toList());
-        }
-        List<Map<String,Object>> out = new ArrayList<>();
-        for(Task t: sorted){
-            Map<String,Object> m = new LinkedHashMap<>();
-            m.put("id", t.id);
-            m.put("title", t.title);
-            m.put("due", t.due);
-            m.put("completed", t.completed);
-            m.put("priority", t.priority);
-            m.put("daysLeft", t.daysLeft);
-            m.put("tags", t.tags);
-            out.add(m);
-        }
-        String json = new GsonLite().toJson(out);
-        ex.getResponseHeaders().add("Content-Type","application/json; charset=utf-8");
-        sendBytes(ex,200,json.getBytes(StandardCharsets.UTF_8));
+        Map<String,String> q = parseForm(ex.getRequestURI().getRawQuery());
+        if (q.containsKey("since")) { handleTasksSince(ex, w, q.get("since")); return; }
+        // daysLeft in the body moves with the calendar, so the day is part of the tag
+        long version = w.tasks.version();
+        String etag = "\"v" + version + "-d" + today + "\"";
+        ex.getResponseHeaders().add("ETag", etag);
+        ex.getResponseHeaders().add("Cache-Control", "no-cache");
+        String inm = ex.getRequestHeaders().getFirst("If-None-Match");
+        if (inm != null && (inm.contains(etag) || inm.trim().equals("*"))) { addCommonCors(ex); ex.sendResponseHeaders(304,-1); ex.close(); return; }
+        sendJson(ex, 200, j -> {
+            j.beginArray();
+            for(Task t: w.tasks.inPriorityOrder()) writeTask(j, t, true);
+            j.endArray();
+        });
+    }
+
+    /*
+      GET /tasks?since=<version> -> {"version":V,"full":false,"changed":[...],"deleted":[ids]}
+      with only what changed after <version>. When <version> has already left the change ring
+      (or comes from another server run) the reply is "full":true with every task in "changed".
+    */
+    static void handleTasksSince(HttpExchange ex, Workspace w, String sinceParam) throws IOException {
+        long since;
+        try { since = Long.parseLong(urlDecode(sinceParam)); } catch (NumberFormatException e) { sendPlain(ex,400,"since must be a version number"); return; }
+        long[] version = new long[1];
+        Set<String> ids = w.tasks.changedSince(since, version);
+        ex.getResponseHeaders().add("Cache-Control", "no-cache");
+        sendJson(ex, 200, j -> {
+            j.beginObject();
+            j.name("version").value(version[0]);
+            j.name("full").value(ids == null);
+            j.name("changed").beginArray();
+            if (ids == null) { for(Task t: w.tasks.inPriorityOrder()) writeTask(j, t, true); }
+            else for(String id: ids) { Task t = w.tasks.get(id); if (t != null) writeTask(j, t, true); }
+            j.endArray();
+            j.name("deleted").beginArray();
+            if (ids != null) for(String id: ids) if (w.tasks.get(id) == null) j.value(id);
+            j.endArray();
+            j.endObject();
+        });
     }
 
-    static void handleExportCSV(HttpExchange ex) throws IOException {
+    /*
+      GET /tasks/search?q=&tag=&from=&to=&completed=true|false&offset=&limit=
+      q: words matched against the words of titles and tags, all of which must match; a word
+         ending in * is a prefix ("des*" matches "design"). tag: comma separated, all required.
+      from/to (yyyy-MM-dd, inclusive) bound the due date. Results come in GET /tasks order:
+      {"total":N,"offset":O,"tasks":[...]} with at most limit (default 100, max 1000) tasks.
+    */
+    static void handleSearch(HttpExchange ex, Workspace w) throws IOException {
         if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) { ex.sendResponseHeaders(405,-1); ex.close(); return; }
-        StringBuilder sb = new StringBuilder();
-        sb.append("id,title,due,completed,priority,daysLeft,tags\n");
-        synchronized(taskList){
-            for(Task t: taskList){
-                sb.append(csvEscape(t.id)).append(",").append(csvEscape(t.title)).append(",")
-                  .append(csvEscape(t.due)).append(",").append(t.completed).append(",")
-                  .append(csvEscape(t.priority)).append(",").append(t.daysLeft).append(",")
-                  .append(csvEscape(t.tags)).append("\n");
+        Map<String,String> q = parseForm(ex.getRequestURI().getRawQuery());
+        Boolean completed = q.containsKey("completed") ? Boolean.valueOf(urlDecode(q.get("completed"))) : null;
+        long fromDay, toDay;
+        int offset, limit;
+        try {
+            fromDay = q.containsKey("from") ? LocalDate.parse(urlDecode(q.get("from"))).toEpochDay() : Long.MIN_VALUE;
+            toDay = q.containsKey("to") ? LocalDate.parse(urlDecode(q.get("to"))).toEpochDay() : Long.MAX_VALUE;
+            offset = Math.max(0, Integer.parseInt(q.getOrDefault("offset", "0")));
+            limit = Math.min(1000, Math.max(0, Integer.parseInt(q.getOrDefault("limit", "100"))));
+        } catch (DateTimeException | NumberFormatException e) {
+            sendPlain(ex,400,"from/to must be yyyy-MM-dd, offset/limit must be numbers"); return;
+        }
+
+        List<Set<UUID>> sets = new ArrayList<>();
+        for (String word : urlDecode(q.getOrDefault("q", "")).toLowerCase().split("\\s+")) {
+            List<String> terms = tokens(word);
+            for (int i = 0; i < terms.size(); i++) sets.add(w.tasks.withTerm(terms.get(i), word.endsWith("*") && i == terms.size() - 1));
+        }
+        for (String tag : splitTags(urlDecode(q.getOrDefault("tag", "")))) sets.add(w.tasks.taggedWith(tag));
+        Set<UUID> hits = null;
+        if (!sets.isEmpty()) {
+            sets.sort(Comparator.comparingInt(Set::size));
+            hits = sets.size() == 1 ? sets.get(0) : new HashSet<>(sets.get(0));
+            for (int i = 1; i < sets.size() && !hits.isEmpty(); i++) hits.retainAll(sets.get(i));
+        }
+
+        java.util.function.Predicate<Task> keep = t -> (completed == null || t.completed == completed) && t.dueDay >= fromDay && t.dueDay <= toDay;
+        List<Task> page = new ArrayList<>();
+        int total = 0;
+        if (hits == null || hits.size() * 8L > w.tasks.size()) {
+            // a broad match: walking the priority index in order beats sorting most of the store
+            for (Task t : w.tasks.inPriorityOrder()) {
+                if ((hits != null && !hits.contains(t.key)) || !keep.test(t)) continue;
+                if (total++ >= offset && page.size() < limit) page.add(t);
+            }
+        } else {
+            List<Task> found = new ArrayList<>();
+            for (UUID key : hits) { Task t = w.tasks.byId.get(key); if (t != null && keep.test(t)) found.add(t); }
+            found.sort(w.tasks.byPriority.comparator());
+            total = found.size();
+            page = found.subList(Math.min(offset, total), (int) Math.min((long) offset + limit, total));
+        }
+        int matched = total;
+        List<Task> rows = page;
+        sendJson(ex, 200, j -> {
+            j.beginObject();
+            j.name("total").value(matched);
+            j.name("offset").value(offset);
+            j.name("tasks").beginArray();
+            for (Task t : rows) writeTask(j, t, true);
+            j.endArray();
+            j.endObject();
+        });
+    }
+
+    /*
+      GET /exportCSV, GET /export?what=tasks|sessions&format=csv|json|jsonl
+          &from=&to=&completed=true|false&tag=&offset=&limit=
+      from/to (yyyy-MM-dd, inclusive) filter tasks by due date and sessions by start day; tag
+      filters sessions through their task. Rows are copied out of the store as a snapshot and
+      streamed chunked from it, so writers are only blocked for the copy. Tasks come in
+      (due, id) order, or insertion order from /exportCSV as they always have, and sessions
+      in start order, so offset/limit pages are stable; X-Total-Count and X-Next-Offset
+      describe the full result.
+    */
+    static void handleExport(HttpExchange ex, Workspace w) throws IOException {
+        if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) { ex.sendResponseHeaders(405,-1); ex.close(); return; }
+        Map<String,String> q = parseForm(ex.getRequestURI().getRawQuery());
+        String what = urlDecode(q.getOrDefault("what", "tasks"));
+        String format = urlDecode(q.getOrDefault("format", "csv"));
+        Boolean completed = q.containsKey("completed") ? Boolean.valueOf(urlDecode(q.get("completed"))) : null;
+        String tag = q.containsKey("tag") ? urlDecode(q.get("tag")).trim().toLowerCase() : null;
+        long fromDay, toDay;
+        int offset, limit;
+        try {
+            fromDay = q.containsKey("from") ? LocalDate.parse(urlDecode(q.get("from"))).toEpochDay() : Long.MIN_VALUE;
+            toDay = q.containsKey("to") ? LocalDate.parse(urlDecode(q.get("to"))).toEpochDay() : Long.MAX_VALUE;
+            offset = Math.max(0, Integer.parseInt(q.getOrDefault("offset", "0")));
+            limit = q.containsKey("limit") ? Math.max(0, Integer.parseInt(q.get("limit"))) : Integer.MAX_VALUE;
+        } catch (DateTimeException | NumberFormatException e) {
+            sendPlain(ex,400,"from/to must be yyyy-MM-dd, offset/limit must be numbers"); return;
+        }
+        if (!format.equals("csv") && !format.equals("json") && !format.equals("jsonl")) { sendPlain(ex,400,"format must be csv, json or jsonl"); return; }
+
+        List<Task> taskRows = null;
+        List<PomodoroSession> sessionRows = null;
+        int total;
+        if (what.equals("tasks")) {
+            List<Task> snap = new ArrayList<>();
+            w.tasks.withAllStripes(() -> snap.addAll(w.tasks.dueBetween(fromDay, toDay)));
+            // /exportCSV keeps insertion order; ord survives restarts because snapshots are written in it
+            if (localPath(ex).equals("/exportCSV")) snap.sort(Comparator.comparingLong(t -> t.ord));
+            taskRows = new ArrayList<>();
+            for (Task t : snap) {
+                if (completed != null && t.completed != completed) continue;
+                if (tag != null && !splitTags(t.tags()).contains(tag)) continue;
+                taskRows.add(t);
+            }
+            total = taskRows.size();
+            taskRows = taskRows.subList(Math.min(offset, total), (int) Math.min((long) offset + limit, total));
+        } else if (what.equals("sessions")) {
+            Set<String> taskIds = tag == null ? null : new HashSet<>();
+            if (tag != null) for (Task t : w.tasks.withTag(tag)) taskIds.add(t.id());
+            List<PomodoroSession> rows = new ArrayList<>();
+            // one consistent copy of the columns, then filtered with the monitor released
+            w.sessions.copy().forEach(s -> {
+                if (completed != null && s.completed != completed) return;
+                if (taskIds != null && !taskIds.contains(s.taskId)) return;
+                if (fromDay != Long.MIN_VALUE || toDay != Long.MAX_VALUE) {
+                    long day = PomodoroStats.startDay(s);
+                    if (day == NO_DAY || day < fromDay || day > toDay) return;
+                }
+                rows.add(s);
+            });
+            sessionRows = rows;
+            total = sessionRows.size();
+            sessionRows = sessionRows.subList(Math.min(offset, total), (int) Math.min((long) offset + limit, total));
+        } else {
+            sendPlain(ex,400,"what must be tasks or sessions"); return;
+        }
+
+        int shown = taskRows != null ? taskRows.size() : sessionRows.size();
+        ex.getResponseHeaders().add("X-Total-Count", Integer.toString(total));
+        if (offset + shown < total) ex.getResponseHeaders().add("X-Next-Offset", Integer.toString(offset + shown));
+        ex.getResponseHeaders().add("Content-Type", format.equals("csv") ? "text/csv; charset=utf-8"
+            : format.equals("json") ? "application/json; charset=utf-8" : "application/x-ndjson; charset=utf-8");
+        ex.getResponseHeaders().add("Content-Disposition","attachment; filename=\"" + what + "." + format + "\"");
+        addCommonCors(ex);
+        ex.sendResponseHeaders(200, 0);
+        try (OutputStream os = ex.getResponseBody()) {
+            if (format.equals("csv")) {
+                Writer csv = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), 8192);
+                if (taskRows != null) {
+                    csv.write("id,title,due,completed,priority,daysLeft,tags\n");
+                    for (Task t : taskRows) {
+                        csv.append(csvEscape(t.id())).append(',').append(csvEscape(t.title)).append(',')
+                         .append(csvEscape(t.due())).append(',').append(Boolean.toString(t.completed)).append(',')
+                         .append(csvEscape(t.priority())).append(',').append(Long.toString(t.daysLeft())).append(',')
+                         .append(csvEscape(t.tags())).append('\n');
+                    }
+                } else {
+                    csv.write("id,taskId,start,end,completed\n");
+                    for (PomodoroSession s : sessionRows) {
+                        csv.append(csvEscape(s.id)).append(',').append(csvEscape(s.taskId)).append(',')
+                         .append(csvEscape(s.startText())).append(',').append(csvEscape(s.endText())).append(',')
+                         .append(Boolean.toString(s.completed)).append('\n');
+                    }
+                }
+                csv.flush();
+            } else {
+                boolean lines = format.equals("jsonl");
+                try (JsonOut j = JsonOut.open(os)) {
+                    if (!lines) j.beginArray();
+                    if (taskRows != null) for (Task t : taskRows) { writeTask(j, t, true); if (lines) j.put('\n'); }
+                    else for (PomodoroSession s : sessionRows) { j.beginObject(); writeSessionFields(j, s); j.endObject(); if (lines) j.put('\n'); }
+                    if (!lines) j.endArray();
+                }
             }
         }
-        byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
-        ex.getResponseHeaders().add("Content-Type","text/csv; charset=utf-8");
-        ex.getResponseHeaders().add("Content-Disposition","attachment; filename=\"tasks.csv\"");
-        sendBytes(ex,200,data);
+        ex.close();
     }
 
     // -------------------- Pomodoro Handlers --------------------
-    static void handlePomodoroStart(HttpExchange ex) throws IOException {
+    static void handlePomodoroStart(HttpExchange ex, Workspace w) throws IOException {
         if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) { ex.sendResponseHeaders(405,-1); ex.close(); return; }
         String body = new BufferedReader(new InputStreamReader(ex.getRequestBody(), StandardCharsets.UTF_8)).lines().collect(Collectors.joining());
         Map<String,String> map = parseForm(body);
@@ -216,68 +1277,521 @@ public class TaskApp {
         String id = UUID.randomUUID().toString();
         String now = Instant.now().toString();
         PomodoroSession s = new PomodoroSession(id, taskId, now);
-        synchronized(sessions){ sessions.add(s); }
-        saveSessionsToDisk();
+        long seq;
+        synchronized(w.sessions){ w.sessions.add(s); w.stats.record(s); seq = journalSession(w, s); }
+        commitSessions(w, seq);
+        publishSession(w, "start", s);
         sendPlain(ex,200,id);
     }
 
-    static void handlePomodoroStop(HttpExchange ex) throws IOException {
+    static void handlePomodoroStop(HttpExchange ex, Workspace w) throws IOException {
         if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) { ex.sendResponseHeaders(405,-1); ex.close(); return; }
         String body = new BufferedReader(new InputStreamReader(ex.getRequestBody(), StandardCharsets.UTF_8)).lines().collect(Collectors.joining());
         Map<String,String> map = parseForm(body);
         String sid = urlDecode(map.getOrDefault("sessionId",""));
-        synchronized(sessions){
-            for(PomodoroSession s: sessions) if(s.id.equals(sid)){ s.end = Instant.now().toString(); s.completed = true; break; }
+        long seq = 0;
+        PomodoroSession stopped = null;
+        synchronized(w.sessions){
+            int row = w.sessions.openRow(sid); // completed sessions aren't open, so stopping twice is a no-op
+            if(row >= 0){
+                PomodoroSession s = w.sessions.get(row);
+                s.setEnd(Instant.now().toString()); s.completed = true;
+                w.sessions.set(row, s); w.stats.completed(s); seq = journalSession(w, s); stopped = s;
+            }
         }
-        saveSessionsToDisk();
+        commitSessions(w, seq);
+        if (stopped != null) publishSession(w, "stop", stopped);
         sendPlain(ex,200,"OK");
     }
 
-    static void handlePomodoroStats(HttpExchange ex) throws IOException {
+    /*
+      GET /pomodoro/stats                      -> all-time totals plus per-task session counts
+      GET /pomodoro/stats?from=&to=&groupBy=   -> totals for [from, to] (yyyy-MM-dd, inclusive,
+          either side optional) and buckets grouped by day, week (keyed by its Monday) or task
+    */
+    static void handlePomodoroStats(HttpExchange ex, Workspace w) throws IOException {
         if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) { ex.sendResponseHeaders(405,-1); ex.close(); return; }
-        Map<String,Object> result = new LinkedHashMap<>();
-        synchronized(sessions){
-            result.put("totalSessions", sessions.size());
-            Map<String,Integer> perTask = new HashMap<>();
-            for(PomodoroSession s: sessions) perTask.put(s.taskId, perTask.getOrDefault(s.taskId,0)+1);
-            result.put("perTask", perTask);
-        }
-        String json = new GsonLite().toJson(result);
-        ex.getResponseHeaders().add("Content-Type","application/json; charset=utf-8");
-        sendBytes(ex,200,json.getBytes(StandardCharsets.UTF_8));
+        Map<String,String> q = parseForm(ex.getRequestURI().getRawQuery());
+        long from, to;
+        try {
+            from = q.containsKey("from") ? LocalDate.parse(urlDecode(q.get("from"))).toEpochDay() : Long.MIN_VALUE;
+            to = q.containsKey("to") ? LocalDate.parse(urlDecode(q.get("to"))).toEpochDay() : Long.MAX_VALUE;
+        } catch (DateTimeException e) {
+            sendPlain(ex,400,"from/to must be yyyy-MM-dd"); return;
+        }
+        String groupBy = urlDecode(q.getOrDefault("groupBy", q.isEmpty() ? "legacy" : "none"));
+        if (!Arrays.asList("legacy","none","day","week","task").contains(groupBy)) { sendPlain(ex,400,"groupBy must be day, week, task or none"); return; }
+        long[] totals = new long[3];
+        List<StatsBucket> buckets = w.stats.query(from, to, groupBy, totals);
+        sendJson(ex, 200, j -> {
+            j.beginObject();
+            j.name("totalSessions").value(totals[0]);
+            j.name("completedSessions").value(totals[1]);
+            j.name("focusedMinutes").value(totals[2] / 60);
+            if (groupBy.equals("legacy")) {
+                j.name("perTask").beginObject();
+                for(StatsBucket b: buckets) j.name(b.key).value(b.sessions);
+                j.endObject();
+            } else if (!groupBy.equals("none")) {
+                j.name("groupBy").value(groupBy);
+                j.name("buckets").beginArray();
+                for(StatsBucket b: buckets) {
+                    j.beginObject();
+                    j.name("key").value(b.key);
+                    j.name("sessions").value(b.sessions);
+                    j.name("completed").value(b.completed);
+                    j.name("focusedMinutes").value(b.focusSeconds / 60);
+                    j.endObject();
+                }
+                j.endArray();
+            }
+            j.endObject();
+        });
     }
 
-    // -------------------- Static file serving --------------------
-    static void handleStatic(HttpExchange ex) throws IOException {
-        String path = ex.getRequestURI().getPath();
-        if (path == null || path.equals("/")) path = "/index.html";
-        Path file = FRONTEND_DIR.resolve(path.substring(1)).normalize();
-        if (!file.startsWith(FRONTEND_DIR) || !Files.exists(file)) {
-            Path index = FRONTEND_DIR.resolve("index.html");
-            if (Files.exists(index)) { sendFile(ex,index); return; }
-            sendPlain(ex,404,"404 Not Found"); return;
+    // -------------------- Pomodoro statistics --------------------
+    static final long NO_DAY = Long.MIN_VALUE; // session start that isn't a parseable instant
+
+    /*
+      Counters kept up to date by /pomodoro/start and /pomodoro/stop (and rebuilt once at load),
+      so a stats query costs O(days in range) or O(tasks) instead of a walk over every session
+      ever recorded. A session's completion and focus time count on the day it started.
+    */
+    static final class PomodoroStats {
+        final DayHistogram all = new DayHistogram();
+        final HashMap<String,DayHistogram> perTask = new HashMap<>();
+
+        synchronized void rebuild(SessionStore store) throws IOException {
+            all.clear();
+            perTask.clear();
+            store.forEach(s -> { record(s); if (s.completed) completed(s); });
         }
-        sendFile(ex,file);
-    }
 
-    // -------------------- Helpers --------------------
-    static void sendFile(HttpExchange ex, Path file) throws IOException {
-        byte[] bytes = Files.readAllBytes(file);
-        ex.getResponseHeaders().add("Content-Type", guessMime(file.toString()));
-        sendBytes(ex,200,bytes);
-    }
+        synchronized void record(PomodoroSession s) {
+            long day = startDay(s);
+            all.add(day, 1, 0, 0);
+            perTask.computeIfAbsent(s.taskId, k -> new DayHistogram()).add(day, 1, 0, 0);
+        }
 
-    static void sendPlain(HttpExchange ex, int code, String body) throws IOException {
-        byte[] b = body.getBytes(StandardCharsets.UTF_8);
-        ex.getResponseHeaders().add("Content-Type","text/plain; charset=utf-8");
-        sendBytes(ex,code,b);
+        synchronized void completed(PomodoroSession s) {
+            long day = startDay(s), secs = focusSeconds(s);
+            all.add(day, 0, 1, secs);
+            perTask.computeIfAbsent(s.taskId, k -> new DayHistogram()).add(day, 0, 1, secs);
+        }
+
+        // fills totals with {sessions, completed, focusSeconds} over [from, to]
+        synchronized List<StatsBucket> query(long from, long to, String groupBy, long[] totals) {
+            List<StatsBucket> out = new ArrayList<>();
+            boolean allTime = from == Long.MIN_VALUE && to == Long.MAX_VALUE;
+            if (allTime) { totals[0] = all.totalStarted; totals[1] = all.totalCompleted; totals[2] = all.totalFocus; }
+            else all.sum(from, to, totals);
+            switch (groupBy) {
+                case "legacy":
+                    for (Map.Entry<String,DayHistogram> e : perTask.entrySet()) out.add(new StatsBucket(e.getKey(), e.getValue().totals()));
+                    break;
+                case "task":
+                    for (Map.Entry<String,DayHistogram> e : perTask.entrySet()) {
+                        long[] t = allTime ? e.getValue().totals() : e.getValue().sum(from, to, new long[3]);
+                        if (t[0] > 0) out.add(new StatsBucket(e.getKey(), t));
+                    }
+                    break;
+                case "day":
+                case "week":
+                    if (all.isEmpty()) break;
+                    long lo = Math.max(from, all.minDay()), hi = Math.min(to, all.maxDay());
+                    for (long d = lo; d <= hi; ) {
+                        long end = groupBy.equals("day") ? d : Math.min(hi, weekStart(d) + 6);
+                        long key = groupBy.equals("day") ? d : weekStart(d);
+                        out.add(new StatsBucket(LocalDate.ofEpochDay(key).format(DF), all.sum(d, end, new long[3])));
+                        d = end + 1;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            return out;
+        }
+
+        static long weekStart(long epochDay) { return epochDay - Math.floorMod(epochDay + 3, 7); } // 1970-01-01 was a Thursday
+
+        static long startDay(PomodoroSession s) {
+            if (s.start == PomodoroSession.NO_TIME) return NO_DAY;
+            return LocalDate.ofInstant(Instant.ofEpochSecond(Math.floorDiv(s.start, 1_000_000_000L)), ZoneId.systemDefault()).toEpochDay();
+        }
+
+        static long focusSeconds(PomodoroSession s) {
+            if (s.start == PomodoroSession.NO_TIME || s.end == PomodoroSession.NO_TIME) return 0;
+            return Math.max(0, Math.floorDiv(s.end - s.start, 1_000_000_000L));
+        }
     }
 
-    static void sendBytes(HttpExchange ex, int code, byte[] bytes) throws IOException {
-        addCommonCors(ex);
-        ex.sendResponseHeaders(code, bytes.length);
-        ex.getResponseBody().write(bytes);
-        ex.close();
+    static final class StatsBucket {
+        final String key;
+        final long sessions, completed, focusSeconds;
+        StatsBucket(String key, long[] t) { this.key = key; this.sessions = t[0]; this.completed = t[1]; this.focusSeconds = t[2]; }
+    }
+
+    /*
+      Per-day counters kept sparse: only days that had sessions get an entry, in sorted parallel
+      arrays. Sessions arrive in time order, so add() almost always updates or appends at the end.
+    */
+    static final class DayHistogram {
+        int n;
+        int[] days = new int[1], started = new int[1], completed = new int[1];
+        long[] focus = new long[1];
+        long totalStarted, totalCompleted, totalFocus;
+
+        void add(long day, long dStarted, long dCompleted, long dFocus) {
+            totalStarted += dStarted; totalCompleted += dCompleted; totalFocus += dFocus;
+            if (day == NO_DAY) return;
+            int i = slot((int) day);
+            started[i] += dStarted; completed[i] += dCompleted; focus[i] += dFocus;
+        }
+
+        int slot(int day) {
+            if (n > 0 && days[n - 1] == day) return n - 1;
+            int i = n == 0 || days[n - 1] < day ? n : Arrays.binarySearch(days, 0, n, day);
+            if (i >= 0 && i < n) return i;
+            if (i < 0) i = -i - 1;
+            if (n == days.length) {
+                int cap = n + (n >> 1) + 1;
+                days = Arrays.copyOf(days, cap); started = Arrays.copyOf(started, cap);
+                completed = Arrays.copyOf(completed, cap); focus = Arrays.copyOf(focus, cap);
+            }
+            System.arraycopy(days, i, days, i + 1, n - i); System.arraycopy(started, i, started, i + 1, n - i);
+            System.arraycopy(completed, i, completed, i + 1, n - i); System.arraycopy(focus, i, focus, i + 1, n - i);
+            days[i] = day; started[i] = 0; completed[i] = 0; focus[i] = 0;
+            n++;
+            return i;
+        }
+
+        boolean isEmpty() { return n == 0; }
+
+        long minDay() { return days[0]; }
+
+        long maxDay() { return days[n - 1]; }
+
+        long[] totals() { return new long[]{ totalStarted, totalCompleted, totalFocus }; }
+
+        long[] sum(long from, long to, long[] out) {
+            if (isEmpty() || from > maxDay() || to < minDay()) return out;
+            int i = from <= minDay() ? 0 : Arrays.binarySearch(days, 0, n, (int) from);
+            if (i < 0) i = -i - 1;
+            for (; i < n && days[i] <= to; i++) {
+                out[0] += started[i]; out[1] += completed[i]; out[2] += focus[i];
+            }
+            return out;
+        }
+
+        void clear() {
+            n = 0;
+            days = new int[1]; started = new int[1]; completed = new int[1]; focus = new long[1];
+            totalStarted = totalCompleted = totalFocus = 0;
+        }
+    }
+
+    // -------------------- Server-Sent Events --------------------
+    // GET /events: text/event-stream of "task" and "pomodoro" events. The handler returns right
+    // away and leaves the exchange open; the Broadcaster owns it from then on.
+    static void handleEvents(HttpExchange ex, Workspace w) throws IOException {
+        if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) { ex.sendResponseHeaders(405,-1); ex.close(); return; }
+        addCommonCors(ex);
+        ex.getResponseHeaders().add("Content-Type", "text/event-stream; charset=utf-8");
+        ex.getResponseHeaders().add("Cache-Control", "no-cache");
+        ex.getResponseHeaders().add("X-Accel-Buffering", "no");
+        ex.sendResponseHeaders(200, 0);
+        events.subscribe(ex, w.name);
+    }
+
+    // after the change's stripe is released: publishing never runs under a store lock
+    static void publishTask(Workspace w, Task t, long v) {
+        if (t == null || v == 0 || !events.hasSubscribers()) return;
+        events.publish(w.name, "task", v, j -> {
+            j.beginObject(); j.name("op").value("put"); j.name("version").value(v); j.name("task"); writeTask(j, t, true); j.endObject();
+        });
+    }
+
+    static void publishTaskDeleted(Workspace w, String id, long v) {
+        if (id == null || v == 0 || !events.hasSubscribers()) return;
+        events.publish(w.name, "task", v, j -> {
+            j.beginObject(); j.name("op").value("del"); j.name("version").value(v); j.name("id").value(id); j.endObject();
+        });
+    }
+
+    static void publishSession(Workspace w, String op, PomodoroSession s) {
+        if (!events.hasSubscribers()) return;
+        events.publish(w.name, "pomodoro", 0, j -> {
+            j.beginObject(); j.name("op").value(op); j.name("session").beginObject(); writeSessionFields(j, s); j.endObject(); j.endObject();
+        });
+    }
+
+    /*
+      Fan-out to SSE subscribers. publish() encodes an event once and offers the bytes to the
+      bounded queue of every subscriber in the event's workspace without blocking; a small
+      writer pool drains queues, at most one task per subscriber at a time. A subscriber whose
+      queue is full is too slow and is dropped: marked dead and removed on the spot, with its
+      exchange closed by a closer thread, since closing waits for a writer that may be stuck
+      on the stalled socket. Nothing is published while a store lock is held. Idle
+      connections cost one queue and no thread; a comment heartbeat finds dead ones.
+    */
+    static final class Broadcaster {
+        final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        final ExecutorService writers;
+        final ExecutorService closers;
+        final ScheduledExecutorService heartbeat;
+
+        Broadcaster() {
+            AtomicLong n = new AtomicLong();
+            writers = Executors.newFixedThreadPool(SSE_WRITERS, r -> { Thread t = new Thread(r, "sse-" + n.incrementAndGet()); t.setDaemon(true); return t; });
+            closers = Executors.newCachedThreadPool(r -> { Thread t = new Thread(r, "sse-close-" + n.incrementAndGet()); t.setDaemon(true); return t; });
+            heartbeat = Executors.newSingleThreadScheduledExecutor(r -> { Thread t = new Thread(r, "sse-heartbeat"); t.setDaemon(true); return t; });
+            byte[] ping = ":\n\n".getBytes(StandardCharsets.UTF_8);
+            heartbeat.scheduleAtFixedRate(() -> { for (Subscriber sub : subscribers) offer(sub, ping); }, 15, 15, TimeUnit.SECONDS);
+        }
+
+        boolean hasSubscribers() { return !subscribers.isEmpty(); }
+
+        void subscribe(HttpExchange ex, String workspace) {
+            Subscriber sub = new Subscriber(ex, workspace);
+            subscribers.add(sub);
+            offer(sub, "retry: 3000\n\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        void publish(String workspace, String event, long id, JsonBody data) {
+            ByteArrayOutputStream bo = new ByteArrayOutputStream(256);
+            try {
+                bo.write(("event: " + event + "\n" + (id > 0 ? "id: " + id + "\n" : "") + "data: ").getBytes(StandardCharsets.UTF_8));
+                try (JsonOut j = JsonOut.open(bo)) { data.write(j); }
+                bo.write("\n\n".getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            byte[] msg = bo.toByteArray();
+            for (Subscriber sub : subscribers) if (sub.workspace.equals(workspace)) offer(sub, msg);
+        }
+
+        void offer(Subscriber sub, byte[] msg) {
+            if (!sub.queue.offer(msg)) { drop(sub); return; }
+            if (sub.scheduled.compareAndSet(false, true)) {
+                try { writers.execute(() -> drain(sub)); } catch (RejectedExecutionException e) { drop(sub); }
+            }
+        }
+
+        void drain(Subscriber sub) {
+            try {
+                do {
+                    byte[] m;
+                    while (!sub.dead && (m = sub.queue.poll()) != null) sub.out.write(m);
+                    if (sub.dead) return;
+                    sub.out.flush();
+                    sub.scheduled.set(false);
+                } while (!sub.queue.isEmpty() && sub.scheduled.compareAndSet(false, true));
+            } catch (IOException e) {
+                drop(sub);
+            }
+        }
+
+        // no socket I/O here: publish() and offer() call this from request threads
+        void drop(Subscriber sub) {
+            if (!subscribers.remove(sub)) return;
+            sub.dead = true;
+            sub.queue.clear();
+            try { closers.execute(sub.ex::close); } catch (RejectedExecutionException e) { /* shutting down */ }
+        }
+
+        void closeAll() { for (Subscriber sub : subscribers) drop(sub); }
+    }
+
+    static final class Subscriber {
+        final HttpExchange ex;
+        final String workspace;
+        final OutputStream out;
+        final ArrayBlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(SSE_BUFFER);
+        final java.util.concurrent.atomic.AtomicBoolean scheduled = new java.util.concurrent.atomic.AtomicBoolean();
+        volatile boolean dead;
+
+        Subscriber(HttpExchange ex, String workspace) { this.ex = ex; this.workspace = workspace; this.out = ex.getResponseBody(); }
+    }
+
+    // -------------------- Static file serving --------------------
+    static void handleStatic(HttpExchange ex) throws IOException {
+        String path = localPath(ex);
+        if (path == null || path.equals("/")) path = "/index.html";
+        Asset a = assets.get(path.substring(1));
+        if (a == null) a = assets.get("index.html");
+        if (a == null) { sendPlain(ex,404,"404 Not Found"); return; }
+        sendAsset(ex,a);
+    }
+
+    // -------------------- Static asset cache --------------------
+    static final class Asset {
+        final byte[] raw;
+        final byte[] gzip; // null when compression doesn't pay off
+        final String mime;
+        final String etag;
+        final String gzipEtag; // a different representation needs its own strong ETag
+        final String cacheControl;
+
+        Asset(String name, byte[] raw) throws IOException {
+            this.raw = raw;
+            this.mime = guessMime(name);
+            byte[] z = compressible(mime) ? gzip(raw) : null;
+            this.gzip = z != null && z.length < raw.length ? z : null;
+            String hash = sha256Hex(raw).substring(0, 32);
+            this.etag = "\"" + hash + "\"";
+            this.gzipEtag = "\"" + hash + "-gz\"";
+            // file names aren't fingerprinted: html always revalidates, the rest briefly cached
+            this.cacheControl = name.endsWith(".html") ? "no-cache" : "public, max-age=300";
+        }
+
+        static boolean compressible(String mime) { return mime.startsWith("text/") || mime.contains("javascript") || mime.contains("json") || mime.contains("svg"); }
+
+        static byte[] gzip(byte[] raw) throws IOException {
+            ByteArrayOutputStream bo = new ByteArrayOutputStream(raw.length / 3 + 64);
+            try (java.util.zip.GZIPOutputStream gz = new java.util.zip.GZIPOutputStream(bo)) { gz.write(raw); }
+            return bo.toByteArray();
+        }
+
+        static String sha256Hex(byte[] data) {
+            try {
+                StringBuilder sb = new StringBuilder();
+                for (byte b : java.security.MessageDigest.getInstance("SHA-256").digest(data)) sb.append(String.format("%02x", b));
+                return sb.toString();
+            } catch (java.security.NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /*
+      Everything under FRONTEND_DIR, read once at startup and kept in memory with a gzip copy
+      and ETags. A WatchService thread reloads or drops entries as files change on disk, so
+      requests never touch the filesystem.
+    */
+    static final class AssetCache {
+        final Path root;
+        final ConcurrentHashMap<String,Asset> byPath = new ConcurrentHashMap<>();
+        WatchService watcher;
+
+        AssetCache(Path root) { this.root = root; }
+
+        Asset get(String rel) { return byPath.get(rel); }
+
+        void start() {
+            if (!Files.isDirectory(root)) return;
+            try {
+                watcher = root.getFileSystem().newWatchService();
+                loadDir(root);
+            } catch (IOException e) {
+                System.err.println("Failed to load frontend: " + e.getMessage());
+                return;
+            }
+            Thread t = new Thread(this::watchLoop, "asset-watch");
+            t.setDaemon(true);
+            t.start();
+        }
+
+        void loadDir(Path dir) throws IOException {
+            try (java.util.stream.Stream<Path> walk = Files.walk(dir)) {
+                for (Path p : (Iterable<Path>) walk::iterator) {
+                    if (Files.isDirectory(p)) p.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                    else load(p);
+                }
+            }
+        }
+
+        void load(Path file) {
+            String rel = key(file);
+            try {
+                byPath.put(rel, new Asset(rel, Files.readAllBytes(file)));
+            } catch (IOException e) {
+                byPath.remove(rel); // deleted or unreadable between the event and now
+            }
+        }
+
+        String key(Path file) { return root.relativize(file).toString().replace(File.separatorChar, '/'); }
+
+        void watchLoop() {
+            while (true) {
+                WatchKey k;
+                try { k = watcher.take(); } catch (InterruptedException | ClosedWatchServiceException e) { return; }
+                Path dir = (Path) k.watchable();
+                for (WatchEvent<?> ev : k.pollEvents()) {
+                    try {
+                        if (ev.kind() == StandardWatchEventKinds.OVERFLOW) { byPath.clear(); loadDir(root); continue; }
+                        Path p = dir.resolve((Path) ev.context());
+                        if (ev.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                            String rel = key(p);
+                            byPath.keySet().removeIf(x -> x.equals(rel) || x.startsWith(rel + "/"));
+                        }
+                        else if (Files.isDirectory(p)) loadDir(p);
+                        else load(p);
+                    } catch (IOException e) {
+                        System.err.println("Failed to reload frontend: " + e.getMessage());
+                    }
+                }
+                k.reset();
+            }
+        }
+    }
+
+    static void sendAsset(HttpExchange ex, Asset a) throws IOException {
+        String ae = ex.getRequestHeaders().getFirst("Accept-Encoding");
+        boolean gz = a.gzip != null && ae != null && ae.contains("gzip");
+        Headers h = ex.getResponseHeaders();
+        h.add("Content-Type", a.mime);
+        h.add("ETag", gz ? a.gzipEtag : a.etag);
+        h.add("Cache-Control", a.cacheControl);
+        h.add("Vary", "Accept-Encoding");
+        if (etagMatches(ex.getRequestHeaders().getFirst("If-None-Match"), a)) {
+            addCommonCors(ex);
+            ex.sendResponseHeaders(304, -1);
+            ex.close();
+            return;
+        }
+        if (gz) h.add("Content-Encoding", "gzip");
+        if ("HEAD".equalsIgnoreCase(ex.getRequestMethod())) {
+            addCommonCors(ex);
+            h.add("Content-Length", String.valueOf(gz ? a.gzip.length : a.raw.length));
+            ex.sendResponseHeaders(200, -1);
+            ex.close();
+            return;
+        }
+        sendBytes(ex, 200, gz ? a.gzip : a.raw);
+    }
+
+    // weak comparison as RFC 9110 asks for If-None-Match: either representation's tag counts
+    static boolean etagMatches(String header, Asset a) {
+        if (header == null) return false;
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(a.etag) || tag.equals(a.gzipEtag)) return true;
+        }
+        return false;
+    }
+
+    // -------------------- Helpers --------------------
+    static void sendPlain(HttpExchange ex, int code, String body) throws IOException {
+        byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().add("Content-Type","text/plain; charset=utf-8");
+        sendBytes(ex,code,b);
+    }
+
+    // streams the body with chunked encoding through the calling thread's JsonOut buffer
+    static void sendJson(HttpExchange ex, int code, JsonBody body) throws IOException {
+        addCommonCors(ex);
+        ex.getResponseHeaders().add("Content-Type","application/json; charset=utf-8");
+        ex.sendResponseHeaders(code, 0);
+        try (OutputStream os = ex.getResponseBody(); JsonOut j = JsonOut.open(os)) { body.write(j); }
+        ex.close();
+    }
+
+    static void sendBytes(HttpExchange ex, int code, byte[] bytes) throws IOException {
+        addCommonCors(ex);
+        ex.sendResponseHeaders(code, bytes.length);
+        ex.getResponseBody().write(bytes);
+        ex.close();
     }
 
     static void addCommonCors(HttpExchange ex) {
@@ -300,14 +1814,19 @@ public class TaskApp {
 
     static String urlDecode(String s) { try { return URLDecoder.decode(s==null?"":s, StandardCharsets.UTF_8.name()); } catch(Exception e){ return s; } }
 
-    static int priorityRank(String p) { if ("High".equals(p)) return 0; if ("Medium".equals(p)) return 1; return 2; }
+    static byte priorityFor(long daysLeft) { return (byte) (daysLeft <= 3 ? 0 : daysLeft <= 7 ? 1 : 2); }
 
     static String guessMime(String f) {
         f = f.toLowerCase();
-        if (f.endsWith(".html")) return "text/html";
-        if (f.endsWith(".css")) return "text/css";
-        if (f.endsWith(".js")) return "application/javascript";
-        if (f.endsWith(".json")) return "application/json";
+        if (f.endsWith(".html")) return "text/html; charset=utf-8";
+        if (f.endsWith(".css")) return "text/css; charset=utf-8";
+        if (f.endsWith(".js")) return "application/javascript; charset=utf-8";
+        if (f.endsWith(".json")) return "application/json; charset=utf-8";
+        if (f.endsWith(".svg")) return "image/svg+xml";
+        if (f.endsWith(".png")) return "image/png";
+        if (f.endsWith(".jpg") || f.endsWith(".jpeg")) return "image/jpeg";
+        if (f.endsWith(".ico")) return "image/x-icon";
+        if (f.endsWith(".woff2")) return "font/woff2";
         return "application/octet-stream";
     }
 
@@ -318,177 +1837,1412 @@ public class TaskApp {
         return out;
     }
 
+    // -------------------- Task store --------------------
+    /*
+      Tasks keyed by id in a ConcurrentHashMap, plus secondary indexes:
+      - byDue: the tasks in a skip list ordered by due day (then odd due text, then key), so a
+        date range is a subSet scan between two probe tasks
+      - byTag: lower-cased tag -> ids
+      - byTerm: title and tag words -> ids, sorted so a prefix is a subMap scan
+      - byPriority: the GET /tasks order (priority band, then due date, then insertion order).
+        Within a band, sorting by due date is the same as sorting by daysLeft, so the order only
+        changes on writes and when a task crosses a band at the day rollover.
+      Equal tags strings are stored once: tagRefs counts the stored tasks using each one, and
+      an entry goes when its last task does, so the table only holds live values and goes
+      away with the store when its workspace is evicted.
+      Every put/remove bumps version and records the id in a fixed-size change ring, which
+      backs delta sync (GET /tasks?since=). Loading goes through load/unload instead, which
+      record nothing; loaded() then starts versions at the current millis * 1000, so they keep
+      increasing across reloads and restarts and a stale client version is simply too old.
+      Task objects are treated as immutable once stored: writers put() a modified copy()
+      while holding lockFor(id), so readers never need a lock and never see half an edit.
+      put() indexes the new copy before dropping the old one, so a lookup by id, tag or word
+      always finds the task. An ordered scan (byPriority, byDue) passing it mid-edit may list
+      both copies; if the edit moves the task, it may also reach neither position in time.
+      Writes to different ids only contend when they hash to the same stripe.
+    */
+    static class TaskStore {
+        static final UUID MIN_KEY = new UUID(0, 0);
+        // unsigned, which is the order of the keys' text form
+        static final Comparator<UUID> KEY_ORDER = (a, b) -> {
+            int c = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+            return c != 0 ? c : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+        };
+        final ConcurrentHashMap<UUID,Task> byId = new ConcurrentHashMap<>();
+        // by due day, then the text of non-date dues (which sort after every date), then key
+        final ConcurrentSkipListSet<Task> byDue = new ConcurrentSkipListSet<>(
+            Comparator.comparingInt((Task t) -> t.dueDay).thenComparing(t -> t.oddDue, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(t -> t.key, KEY_ORDER).thenComparingLong(t -> t.seq));
+        final ConcurrentHashMap<String,Set<UUID>> byTag = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String,SharedTags> tagRefs = new ConcurrentHashMap<>();
+        final ConcurrentSkipListMap<String,Set<UUID>> byTerm = new ConcurrentSkipListMap<>(); // title and tag words, sorted for prefix scans
+        final ConcurrentSkipListSet<Task> byPriority = new ConcurrentSkipListSet<>(
+            Comparator.comparingInt((Task t) -> t.priority).thenComparingInt(t -> t.dueDay).thenComparingLong(t -> t.ord).thenComparingLong(t -> t.seq));
+        final Object[] stripes = new Object[64];
+        final AtomicLong nextOrd = new AtomicLong();
+        final AtomicLong nextSeq = new AtomicLong();
+        final long[] ringVersions = new long[CHANGE_RING];
+        final String[] ringIds = new String[CHANGE_RING];
+        long baseVersion = System.currentTimeMillis() * 1000; // guarded by ringIds
+        volatile long version = baseVersion;
+
+        TaskStore() { for (int i = 0; i < stripes.length; i++) stripes[i] = new Object(); }
+
+        long version() { return version; }
+
+        // called once loading is done, before the store is shared
+        void loaded() { synchronized (ringIds) { baseVersion = version = System.currentTimeMillis() * 1000; } }
+
+        long recordChange(String id) {
+            synchronized (ringIds) {
+                long v = version + 1;
+                int slot = (int) (v % ringIds.length);
+                ringVersions[slot] = v;
+                ringIds[slot] = id;
+                version = v;
+                return v;
+            }
+        }
+
+        // ids changed after since (in change order), or null if the ring no longer reaches back that far
+        Set<String> changedSince(long since, long[] versionOut) {
+            synchronized (ringIds) {
+                long v = version;
+                versionOut[0] = v;
+                if (since > v || since < baseVersion || v - since > ringIds.length) return null;
+                Set<String> ids = new LinkedHashSet<>();
+                for (long x = since + 1; x <= v; x++) ids.add(ringIds[(int) (x % ringIds.length)]);
+                return ids;
+            }
+        }
+
+        Object lockFor(String id) { return lockFor(Task.keyOf(id)); }
+
+        Object lockFor(UUID key) { return stripes[(key.hashCode() & 0x7fffffff) % stripes.length]; }
+
+        // runs r holding every stripe, taken in index order so concurrent batches can't deadlock
+        void withAllStripes(Runnable r) { lockFrom(0, r); }
+
+        void lockFrom(int i, Runnable r) {
+            if (i == stripes.length) { r.run(); return; }
+            synchronized (stripes[i]) { lockFrom(i + 1, r); }
+        }
+
+        Task get(String id) { return byId.get(Task.keyOf(id)); }
+
+        Collection<Task> all() { return byId.values(); }
+
+        // every task at one instant, copied under all stripes so a batch is in it whole or not at
+        // all; stored tasks are immutable, so the copy can be written out after they're released.
+        // Sorted by ord: snapshots don't store it, load() hands it out again in file order.
+        List<Task> snapshot() {
+            List<Task> out = new ArrayList<>(size());
+            withAllStripes(() -> out.addAll(byId.values()));
+            out.sort(Comparator.comparingLong(t -> t.ord));
+            return out;
+        }
+
+        int size() { return byId.size(); }
+
+        Iterable<Task> inPriorityOrder() { return byPriority; }
+
+        // insert or replace; callers hold lockFor(t.key). Returns the change's version for
+        // publishTask, which callers run once the stripe is released.
+        long put(Task t) {
+            load(t);
+            return recordChange(t.id());
+        }
+
+        // the change's version (for publishTaskDeleted), 0 if there was no such task
+        long remove(String id) {
+            return unload(id) ? recordChange(id) : 0;
+        }
+
+        // put/remove for loaders: indexed, but no version or change ring entry. The new copy is
+        // indexed before the old one is dropped, so lookups never miss a task being edited.
+        void load(Task t) {
+            Task old = byId.get(t.key);
+            t.ord = old != null ? old.ord : nextOrd.incrementAndGet();
+            t.seq = nextSeq.incrementAndGet();
+            t.tags = shareTags(t.tags); // before old's release, so an unchanged value keeps its entry
+            byPriority.add(t);
+            byDue.add(t);
+            List<String> tags = splitTags(t.tags());
+            Set<String> terms = terms(t);
+            for (String tag : tags) byTag.compute(tag, (k, ids) -> { if (ids == null) ids = ConcurrentHashMap.newKeySet(); ids.add(t.key); return ids; });
+            for (String term : terms) byTerm.compute(term, (k, ids) -> { if (ids == null) ids = ConcurrentHashMap.newKeySet(); ids.add(t.key); return ids; });
+            byId.put(t.key, t);
+            if (old != null) unindex(old, tags, terms);
+        }
+
+        boolean unload(String id) {
+            Task old = byId.remove(Task.keyOf(id));
+            if (old == null) return false;
+            unindex(old, Collections.emptyList(), Collections.emptySet());
+            return true;
+        }
+
+        // drops a copy that is no longer stored; its key stays under the tags and terms its successor kept
+        void unindex(Task t, List<String> keptTags, Set<String> keptTerms) {
+            releaseTags(t.tags);
+            byPriority.remove(t);
+            byDue.remove(t);
+            for (String tag : splitTags(t.tags())) if (!keptTags.contains(tag)) byTag.computeIfPresent(tag, (k, ids) -> { ids.remove(t.key); return ids.isEmpty() ? null : ids; });
+            for (String term : terms(t)) if (!keptTerms.contains(term)) byTerm.computeIfPresent(term, (k, ids) -> { ids.remove(t.key); return ids.isEmpty() ? null : ids; });
+        }
+
+        static final class SharedTags { final String value; int refs; SharedTags(String v) { value = v; } }
+
+        // the store's copy of tags, counted until releaseTags; compute() keeps count and removal atomic
+        String shareTags(String tags) {
+            return tagRefs.compute(tags, (k, e) -> { if (e == null) e = new SharedTags(k); e.refs++; return e; }).value;
+        }
+
+        void releaseTags(String tags) { tagRefs.computeIfPresent(tags, (k, e) -> --e.refs == 0 ? null : e); }
+
+        static Set<String> terms(Task t) {
+            Set<String> out = new HashSet<>(tokens(t.title));
+            out.addAll(tokens(t.tags()));
+            return out;
+        }
+
+        // keys of tasks with a title or tag word equal to term, or starting with it if prefix
+        Set<UUID> withTerm(String term, boolean prefix) {
+            if (!prefix) return byTerm.getOrDefault(term, Collections.emptySet());
+            Set<UUID> out = new HashSet<>();
+            for (Set<UUID> ids : byTerm.subMap(term, true, term + Character.MAX_VALUE, false).values()) out.addAll(ids);
+            return out;
+        }
+
+        Set<UUID> taggedWith(String tag) { return byTag.getOrDefault(tag, Collections.emptySet()); }
+
+        // due epoch days in [fromDay, toDay], inclusive; tasks without a date due only match an open toDay
+        List<Task> dueBetween(long fromDay, long toDay) {
+            NavigableSet<Task> range = byDue;
+            if (fromDay > Integer.MIN_VALUE) range = range.tailSet(probe(Math.min(fromDay, Task.NO_DUE)), true);
+            if (toDay < Task.NO_DUE) range = range.headSet(probe(toDay + 1), false);
+            return new ArrayList<>(range);
+        }
+
+        // sorts before every task due on day
+        static Task probe(long day) { return new Task(MIN_KEY, null, "", (int) Math.max(day, Integer.MIN_VALUE), null, ""); }
+
+        List<Task> withTag(String tag) {
+            List<Task> out = new ArrayList<>();
+            for (UUID key : byTag.getOrDefault(tag.trim().toLowerCase(), Collections.emptySet())) {
+                Task t = byId.get(key);
+                if (t != null) out.add(t);
+            }
+            return out;
+        }
+    }
+
+    /*
+      Every Pomodoro session, one row each, stored column-wise in primitive arrays instead of as
+      objects: the id as UUID bits, the task id as an index into a dictionary (a task's sessions
+      share one copy), start/end as epoch nanos. The rare values that don't fit (non-UUID ids,
+      non-canonical instant text) sit in side maps keyed by row. Rows are only appended, and a
+      row is rewritten once when its session is stopped; `open` finds those rows by id. Code
+      that combines calls holds the store's monitor, as it did with the synchronized list.
+      The PomodoroSession objects handed out are fresh copies of a row.
+    */
+    static final class SessionStore {
+        long[] idHi = new long[16], idLo = new long[16], start = new long[16], end = new long[16];
+        int[] task = new int[16];
+        boolean[] completed = new boolean[16];
+        int size;
+        final StringDict taskIds;
+        final HashMap<Integer,String> oddIds = new HashMap<>(), oddStarts = new HashMap<>(), oddEnds = new HashMap<>();
+        final HashMap<String,Integer> open = new HashMap<>(); // id -> row, sessions not completed yet
+
+        SessionStore() { this(new StringDict()); }
+
+        SessionStore(StringDict taskIds) { this.taskIds = taskIds; }
+
+        synchronized int size() { return size; }
+
+        synchronized int add(PomodoroSession s) {
+            if (size == idHi.length) {
+                int n = size * 2;
+                idHi = Arrays.copyOf(idHi, n); idLo = Arrays.copyOf(idLo, n);
+                start = Arrays.copyOf(start, n); end = Arrays.copyOf(end, n);
+                task = Arrays.copyOf(task, n); completed = Arrays.copyOf(completed, n);
+            }
+            set(size, s);
+            return size++;
+        }
+
+        synchronized void set(int row, PomodoroSession s) {
+            UUID u = canonicalUuid(s.id);
+            idHi[row] = u != null ? u.getMostSignificantBits() : 0;
+            idLo[row] = u != null ? u.getLeastSignificantBits() : 0;
+            odd(oddIds, row, u == null ? s.id : null);
+            task[row] = taskIds.idOf(s.taskId);
+            start[row] = s.start;
+            end[row] = s.end;
+            odd(oddStarts, row, s.oddStart);
+            odd(oddEnds, row, s.oddEnd);
+            completed[row] = s.completed;
+            if (s.completed) open.remove(s.id); else open.put(s.id, row);
+        }
+
+        static void odd(HashMap<Integer,String> m, int row, String v) {
+            if (v != null) m.put(row, v);
+            else if (!m.isEmpty()) m.remove(row);
+        }
+
+        synchronized PomodoroSession get(int row) {
+            String id = oddIds.isEmpty() ? null : oddIds.get(row);
+            PomodoroSession s = new PomodoroSession(id != null ? id : new UUID(idHi[row], idLo[row]).toString(), taskIds.get(task[row]));
+            s.start = start[row];
+            s.end = end[row];
+            if (!oddStarts.isEmpty()) s.oddStart = oddStarts.get(row);
+            if (!oddEnds.isEmpty()) s.oddEnd = oddEnds.get(row);
+            s.completed = completed[row];
+            return s;
+        }
+
+        // the rows as of now, for a long read that shouldn't hold the monitor: copying the columns
+        // is a handful of array copies; the dictionary is append-only, so the copy shares it
+        synchronized SessionStore copy() {
+            SessionStore c = new SessionStore(taskIds);
+            c.idHi = Arrays.copyOf(idHi, size); c.idLo = Arrays.copyOf(idLo, size);
+            c.start = Arrays.copyOf(start, size); c.end = Arrays.copyOf(end, size);
+            c.task = Arrays.copyOf(task, size); c.completed = Arrays.copyOf(completed, size);
+            c.oddIds.putAll(oddIds); c.oddStarts.putAll(oddStarts); c.oddEnds.putAll(oddEnds);
+            c.size = size;
+            return c;
+        }
+
+        // row of the not yet completed session with this id, or -1
+        synchronized int openRow(String id) {
+            Integer row = open.get(id);
+            return row != null ? row : -1;
+        }
+
+        synchronized List<PomodoroSession> rows(int from, int to) {
+            List<PomodoroSession> out = new ArrayList<>();
+            for (int i = from; i < Math.min(to, size); i++) out.add(get(i));
+            return out;
+        }
+
+        // visits rows in order a chunk at a time, so snapshots hold the monitor only briefly
+        // (callers wanting one consistent pass hold it themselves)
+        void forEach(SessionSink sink) throws IOException {
+            for (int i = 0; ; i += 1024) {
+                List<PomodoroSession> chunk = rows(i, i + 1024);
+                if (chunk.isEmpty()) return;
+                for (PomodoroSession s : chunk) sink.accept(s);
+            }
+        }
+    }
+
+    interface SessionSink { void accept(PomodoroSession s) throws IOException; }
+
+    // Re-buckets at each local midnight: only tasks due in (oldToday+3, newToday+7] can change band.
+    static void scheduleDayRollover() {
+        ScheduledExecutorService ses = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "day-rollover");
+            t.setDaemon(true);
+            return t;
+        });
+        Runnable[] job = new Runnable[1];
+        job[0] = () -> {
+            try {
+                long newToday = LocalDate.now().toEpochDay();
+                long oldToday = today;
+                if (newToday != oldToday) {
+                    today = newToday;
+                    for (Workspace w : workspaces.loaded.values()) { // the others compute priorities when loaded
+                        for (Task t : w.tasks.dueBetween(oldToday + 4, newToday + 7)) {
+                            Task moved = null;
+                            long v = 0;
+                            synchronized(w.tasks.lockFor(t.key)) {
+                                Task cur = w.tasks.byId.get(t.key);
+                                if (cur != null && cur.priority != priorityFor(cur.daysLeft())) v = w.tasks.put(moved = cur.copy());
+                            }
+                            publishTask(w, moved, v);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                System.err.println("Day rollover failed: " + e.getMessage());
+            } finally {
+                // recomputed every time rather than a fixed 24h period, so DST changes don't drift it
+                long delay = Duration.between(LocalDateTime.now(), LocalDate.now().plusDays(1).atStartOfDay()).toMillis();
+                ses.schedule(job[0], Math.max(delay, 0) + 1000, TimeUnit.MILLISECONDS);
+            }
+        };
+        job[0].run();
+    }
+
+    // lower-cased runs of letters and digits, for the search index
+    static List<String> tokens(String text) {
+        List<String> out = new ArrayList<>();
+        if (text == null) return out;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) start = i;
+            else if (!word && start >= 0) { out.add(text.substring(start, i).toLowerCase()); start = -1; }
+        }
+        return out;
+    }
+
+    // tags are free-form and comma separated in the UI
+    static List<String> splitTags(String tags) {
+        List<String> out = new ArrayList<>();
+        if (tags == null) return out;
+        for (String p : tags.split(",")) {
+            String tag = p.trim().toLowerCase();
+            if (!tag.isEmpty() && !out.contains(tag)) out.add(tag);
+        }
+        return out;
+    }
+
     // -------------------- Persistence --------------------
-    static synchronized void saveTasksToDisk() {
+    // withMeta adds the derived priority/daysLeft fields of the API; the files store only the rest
+    static void writeTask(JsonOut j, Task t, boolean withMeta) throws IOException {
+        j.beginObject();
+        writeTaskFields(j, t, withMeta);
+        j.endObject();
+    }
+
+    static void writeTaskFields(JsonOut j, Task t, boolean withMeta) throws IOException {
+        j.name("id").value(t.id());
+        j.name("title").value(t.title);
+        j.name("due").value(t.due());
+        j.name("completed").value(t.completed);
+        if (withMeta) {
+            j.name("priority").value(t.priority());
+            j.name("daysLeft").value(t.daysLeft());
+        }
+        j.name("tags").value(t.tags());
+    }
+
+    // field slots filled by JsonIn.readObject; "op" only appears in journal records
+    static final String[] TASK_FIELDS = {"id", "title", "due", "completed", "tags", "op"};
+    static final String[] SESSION_FIELDS = {"id", "taskId", "start", "end", "completed", "op"};
+    static final String[] BATCH_FIELDS = {"op", "id", "title", "due", "tags"};
+
+    static Task taskFromFields(String[] v) {
+        String id = v[0] != null ? v[0] : UUID.randomUUID().toString();
+        String title = v[1] != null ? v[1] : "Untitled";
+        String due = v[2] != null ? v[2] : LocalDate.now().format(DF);
+        Task t = new Task(id, title, due, v[4] != null ? v[4] : "");
+        t.completed = Boolean.parseBoolean(v[3]);
+        return t;
+    }
+
+    static void writeSessionFields(JsonOut j, PomodoroSession s) throws IOException {
+        j.name("id").value(s.id);
+        j.name("taskId").value(s.taskId);
+        j.name("start").value(s.startText());
+        j.name("end").value(s.endText());
+        j.name("completed").value(s.completed);
+    }
+
+    static PomodoroSession sessionFromFields(String[] v) {
+        String id = v[0] != null ? v[0] : UUID.randomUUID().toString();
+        PomodoroSession s = new PomodoroSession(id, v[1] != null ? v[1] : "", v[2] != null ? v[2] : "");
+        s.setEnd(v[3]);
+        s.completed = Boolean.parseBoolean(v[4]);
+        return s;
+    }
+
+    static void reportLoad(Workspace w, String what, int records, int replayed, long bytes, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        LOADS.put(what, new long[]{records, replayed, bytes, nanos});
+        double ms = nanos / 1e6;
+        double mb = bytes / (1024.0 * 1024.0);
+        System.out.printf("Loaded %d %s%s (+%d journal records, %.1f MB) in %.0f ms (%.1f MB/s)%n", records, what,
+            w.name.equals(DEFAULT_WORKSPACE) ? "" : " of workspace " + w.name, replayed, mb, ms, ms > 0 ? mb / (ms / 1000) : 0);
+    }
+
+    static void writeTasksJson(TaskStore tasks, JsonOut j) throws IOException {
+        j.beginArray();
+        for(Task t: tasks.snapshot()) writeTask(j, t, false);
+        j.endArray();
+    }
+
+    // Under the workspace's monitor, before any request can see it. A snapshot or journal that
+    // can't be read fails the load: opening the journal afterwards would compact the partial
+    // store over the snapshot and delete records that were never replayed.
+    static void loadTasksFromDisk(Workspace w) throws IOException {
+        TaskStore tasks = w.tasks;
         try {
-            List<Map<String,Object>> out = new ArrayList<>();
-            synchronized(taskList) {
-                for(Task t: taskList) {
-                    Map<String,Object> m = new LinkedHashMap<>();
-                    m.put("id", t.id);
-                    m.put("title", t.title);
-                    m.put("due", t.due);
-                    m.put("completed", t.completed);
-                    m.put("tags", t.tags);
-                    out.add(m);
+            long start = System.nanoTime();
+            Path src = newerSnapshot(w.dataFile, w.tasksBin);
+            int n = src == w.tasksBin ? BinarySnapshot.readTasks(src, tasks::load)
+                : JsonIn.forEachRecord(src, TASK_FIELDS, v -> tasks.load(taskFromFields(v)));
+            int replayed = Journal.replay(w.tasksJournal, TASK_FIELDS, v -> {
+                if ("del".equals(v[5])) tasks.unload(v[0]);
+                else tasks.load(taskFromFields(v));
+            });
+            tasks.loaded();
+            reportLoad(w, "tasks", n, replayed, sizeOf(src) + sizeOf(w.tasksJournal), start);
+        } catch (IOException | RuntimeException e) {
+            throw new IOException("Failed to load tasks: " + e.getMessage(), e);
+        }
+    }
+
+    static void writeSessionsJson(SessionStore sessions, JsonOut j) throws IOException {
+        j.beginArray();
+        sessions.forEach(s -> { j.beginObject(); writeSessionFields(j, s); j.endObject(); });
+        j.endArray();
+    }
+
+    static void loadSessionsFromDisk(Workspace w) throws IOException {
+        SessionStore sessions = w.sessions;
+        try {
+            long start = System.nanoTime();
+            // the journal is read first: its latest record for a session replaces the snapshot's
+            // copy in place, and sessions the snapshot doesn't have yet are appended after it
+            Map<String,PomodoroSession> replay = new LinkedHashMap<>();
+            int replayed = Journal.replay(w.sessionsJournal, SESSION_FIELDS, v -> {
+                PomodoroSession s = sessionFromFields(v); replay.put(s.id, s);
+            });
+            java.util.function.Consumer<PomodoroSession> add = s -> {
+                PomodoroSession r = replay.isEmpty() ? null : replay.remove(s.id);
+                sessions.add(r != null ? r : s);
+            };
+            Path src = newerSnapshot(w.sessionsFile, w.sessionsBin);
+            int n = src == w.sessionsBin ? BinarySnapshot.readSessions(src, add)
+                : JsonIn.forEachRecord(src, SESSION_FIELDS, v -> add.accept(sessionFromFields(v)));
+            for (PomodoroSession s : replay.values()) sessions.add(s);
+            w.stats.rebuild(sessions);
+            reportLoad(w, "sessions", n, replayed, sizeOf(src) + sizeOf(w.sessionsJournal), start);
+        } catch (IOException | RuntimeException e) {
+            throw new IOException("Failed to load sessions: " + e.getMessage(), e);
+        }
+    }
+
+    static long sizeOf(Path p) { try { return Files.exists(p) ? Files.size(p) : 0; } catch (IOException e) { return 0; } }
+
+    // whichever of the JSON / binary snapshot was written last, so switching taskapp.snapshot keeps the newest data
+    static Path newerSnapshot(Path json, Path bin) throws IOException {
+        if (!Files.exists(bin)) return json;
+        if (!Files.exists(json)) return bin;
+        return Files.getLastModifiedTime(bin).compareTo(Files.getLastModifiedTime(json)) >= 0 ? bin : json;
+    }
+
+    // java TaskApp --convert tasks|sessions <in> <out>; each side is binary if it ends in .bin, JSON otherwise
+    static void convert(String kind, Path in, Path out) throws IOException {
+        long start = System.nanoTime();
+        boolean binIn = in.toString().endsWith(".bin"), binOut = out.toString().endsWith(".bin");
+        TaskStore tasks = new TaskStore();
+        SessionStore sessions = new SessionStore();
+        int n;
+        StreamBody body;
+        if (kind.equals("tasks")) {
+            n = binIn ? BinarySnapshot.readTasks(in, tasks::load) : JsonIn.forEachRecord(in, TASK_FIELDS, v -> tasks.load(taskFromFields(v)));
+            body = binOut ? os -> BinarySnapshot.writeTasks(tasks, os) : os -> writeJson(os, j -> writeTasksJson(tasks, j));
+        } else if (kind.equals("sessions")) {
+            n = binIn ? BinarySnapshot.readSessions(in, sessions::add) : JsonIn.forEachRecord(in, SESSION_FIELDS, v -> sessions.add(sessionFromFields(v)));
+            body = binOut ? os -> BinarySnapshot.writeSessions(sessions, os) : os -> writeJson(os, j -> writeSessionsJson(sessions, j));
+        } else {
+            System.err.println("Usage: java TaskApp --convert tasks|sessions <in> <out>");
+            return;
+        }
+        writeAtomically(out, body);
+        System.out.printf("Converted %d %s: %s (%d bytes) -> %s (%d bytes) in %.0f ms%n",
+            n, kind, in, sizeOf(in), out, sizeOf(out), (System.nanoTime() - start) / 1e6);
+    }
+
+    // Journal hooks: called while holding the lock the change was made under (the task's stripe,
+    // every stripe for a batch, or the sessions monitor) so log order matches memory order.
+    // They return a sequence number to pass to commitTasks/commitSessions (json mode: the dirty generation).
+    static long journalTask(Workspace w, Task t) {
+        if (w.taskJournal == null) return w.taskWriter.markDirty();
+        return w.taskJournal.append(j -> { j.beginObject(); writeTaskFields(j, t, false); j.name("op").value("put"); j.endObject(); });
+    }
+
+    static long journalTaskDeleted(Workspace w, String id) {
+        if (w.taskJournal == null) return w.taskWriter.markDirty();
+        return w.taskJournal.append(j -> { j.beginObject(); j.name("op").value("del"); j.name("id").value(id); j.endObject(); });
+    }
+
+    // a batch's puts (changed[i]) and deletes (deleted[i]) in order, as one record that replay
+    // applies whole or not at all; 0 if the batch changed nothing
+    static long journalBatch(Workspace w, Task[] changed, String[] deleted) {
+        int n = 0;
+        for (int i = 0; i < changed.length; i++) if (changed[i] != null || deleted[i] != null) n++;
+        if (n == 0) return 0;
+        if (w.taskJournal == null) return w.taskWriter.markDirty();
+        return w.taskJournal.append(j -> {
+            j.beginArray();
+            for (int i = 0; i < changed.length; i++) {
+                if (changed[i] != null) { j.beginObject(); writeTaskFields(j, changed[i], false); j.name("op").value("put"); j.endObject(); }
+                else if (deleted[i] != null) { j.beginObject(); j.name("op").value("del"); j.name("id").value(deleted[i]); j.endObject(); }
+            }
+            j.endArray();
+        });
+    }
+
+    static long journalSession(Workspace w, PomodoroSession s) {
+        if (w.sessionJournal == null) return w.sessionWriter.markDirty();
+        return w.sessionJournal.append(j -> { j.beginObject(); writeSessionFields(j, s); j.name("op").value("put"); j.endObject(); });
+    }
+
+    // Called after the monitor is released: waits for the group commit, or in json mode for the
+    // rewrite covering seq when durability is sync.
+    static void commitTasks(Workspace w, long seq) throws CommitFailed {
+        if (w.taskJournal != null) w.taskJournal.await(seq);
+        else if ("sync".equalsIgnoreCase(DURABILITY)) w.taskWriter.await(seq);
+    }
+
+    static void commitSessions(Workspace w, long seq) throws CommitFailed {
+        if (w.sessionJournal != null) w.sessionJournal.await(seq);
+        else if ("sync".equalsIgnoreCase(DURABILITY)) w.sessionWriter.await(seq);
+    }
+
+    static void snapshotTasks(Workspace w) throws IOException {
+        if (BINARY_SNAPSHOTS) writeAtomically(w.tasksBin, os -> BinarySnapshot.writeTasks(w.tasks, os));
+        else writeAtomically(w.dataFile, os -> writeJson(os, j -> writeTasksJson(w.tasks, j)));
+    }
+
+    static void snapshotSessions(Workspace w) throws IOException {
+        if (BINARY_SNAPSHOTS) writeAtomically(w.sessionsBin, os -> BinarySnapshot.writeSessions(w.sessions, os));
+        else writeAtomically(w.sessionsFile, os -> writeJson(os, j -> writeSessionsJson(w.sessions, j)));
+    }
+
+    static void writeJson(OutputStream os, JsonBody body) throws IOException {
+        try (JsonOut j = JsonOut.open(os)) { body.write(j); }
+    }
+
+    interface StreamBody { void write(OutputStream os) throws IOException; }
+
+    // temp file + fsync + rename, so a crash leaves either the old or the new snapshot on disk
+    static void writeAtomically(Path target, StreamBody body) throws IOException {
+        long start = System.nanoTime(), bytes;
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            body.write(Channels.newOutputStream(ch));
+            ch.force(true);
+            bytes = ch.size();
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        timing("snapshot", target).record(bytes, System.nanoTime() - start);
+    }
+
+    interface Snapshotter { void run() throws IOException; }
+
+    /*
+      json-mode persistence. Mutations only bump the dirty generation; one writer thread per file
+      waits windowMillis after the first change so a burst of edits becomes a single rewrite,
+      then snapshots through writeAtomically. A change landing while a rewrite is in progress
+      gets a newer generation and triggers another rewrite. A failed rewrite is retried on the
+      next window; meanwhile await() throws CommitFailed for the generations it covered (the
+      handler answers 503), so a full disk neither hangs request threads nor acknowledges
+      changes that aren't on disk.
+    */
+    static final class WriteBehind {
+        final Path file;
+        final Snapshotter snapshotter;
+        final long windowMillis;
+        final Thread writer;
+        long dirtyGen = 0;
+        long flushedGen = 0;
+        IOException failure; // last rewrite's error, until one succeeds
+        long failedGen;
+        boolean closed = false;
+
+        WriteBehind(Path file, Snapshotter snapshotter, long windowMillis) {
+            this.file = file;
+            this.snapshotter = snapshotter;
+            this.windowMillis = windowMillis;
+            this.writer = new Thread(this::writeLoop, "write-behind-" + file.getFileName());
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        synchronized long backlog() { return dirtyGen - flushedGen; }
+
+        synchronized long markDirty() {
+            if (dirtyGen == flushedGen) notifyAll();
+            return ++dirtyGen;
+        }
+
+        synchronized void await(long gen) throws CommitFailed {
+            try {
+                while (flushedGen < gen) {
+                    if (failure != null && gen <= failedGen) throw new CommitFailed(file, failure);
+                    if (closed) return;
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void writeLoop() {
+            while (true) {
+                long gen;
+                synchronized (this) {
+                    try {
+                        while (dirtyGen == flushedGen && !closed) wait();
+                        if (dirtyGen == flushedGen) return;
+                        if (!closed) wait(windowMillis); // closing flushes straight away
+                    } catch (InterruptedException e) { return; }
+                    gen = dirtyGen;
+                }
+                IOException error = null;
+                try {
+                    snapshotter.run();
+                } catch (IOException e) {
+                    error = e;
+                } catch (RuntimeException e) {
+                    error = new IOException(e.toString(), e);
+                }
+                synchronized (this) {
+                    if (error != null) {
+                        // flushedGen stays put, so the next window retries and await() reports the failure
+                        System.err.println("Failed to save " + file.getFileName() + ": " + error.getMessage());
+                        failure = error;
+                        failedGen = gen;
+                    } else {
+                        failure = null;
+                        flushedGen = Math.max(flushedGen, gen);
+                    }
+                    notifyAll();
+                    if (error != null && closed) return;
                 }
             }
-            String json = new GsonLite().toJson(out);
-            Files.write(DATA_FILE, json.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-        } catch (Exception e) {
-            System.err.println("Failed to save tasks: " + e.getMessage());
+        }
+
+        void close() {
+            synchronized (this) { closed = true; notifyAll(); }
+            try { writer.join(10000); } catch (InterruptedException ignored) {}
         }
     }
 
-    static synchronized void loadTasksFromDisk() {
-        try {
-            if (!Files.exists(DATA_FILE)) return;
-            String json = new String(Files.readAllBytes(DATA_FILE), StandardCharsets.UTF_8);
-            List<Map<String,String>> arr = new GsonLite().fromJsonList(json);
-            for (Map<String,String> m : arr) {
-                String id = String.valueOf(m.getOrDefault("id", UUID.randomUUID().toString()));
-                String title = String.valueOf(m.getOrDefault("title", "Untitled"));
-                String due = String.valueOf(m.getOrDefault("due", LocalDate.now().format(DF)));
-                boolean completed = Boolean.parseBoolean(String.valueOf(m.getOrDefault("completed","false")));
-                String tags = String.valueOf(m.getOrDefault("tags",""));
-                Task t = new Task(id, title, due, tags);
-                t.completed = completed;
-                t.computeMeta();
-                taskList.add(t);
+    /*
+      Append-only log of one JSON object per line ({"op":"put",...} or {"op":"del","id":...}), or
+      an array of them on one line for a /tasks/batch, which replay applies only if it reads whole.
+      - append() only queues the record; a single writer thread drains the queue, writes the
+        whole batch and fsyncs once (group commit), then wakes everyone waiting in await()
+      - a batch that fails to write is cut off the file again and retried every second; until
+        it goes through, await() for its records throws CommitFailed (the handler answers 503)
+      - records are full-state upserts/deletes, so replaying a record the snapshot already
+        contains is harmless
+      - every COMPACT_EVERY records the writer moves the log aside to <name>.compacting, opens a
+        fresh log and a compaction thread writes a new snapshot; the old log is deleted after
+        the snapshot is safely on disk
+    */
+    static class Journal {
+        final Path file;
+        final Path rotated;
+        final Snapshotter snapshotter;
+        final Thread writer;
+        final Timing flushes;
+        List<byte[]> pending = new ArrayList<>();
+        FileChannel ch;
+        long appendedSeq = 0;
+        long durableSeq = 0;
+        int sinceCompact = 0;
+        boolean compacting = false;
+        boolean closed = false;
+        IOException failure; // the last failed write, until a retry succeeds
+        long failedSeq; // records up to here were in that write
+
+        Journal(Path file, Snapshotter snapshotter) throws IOException {
+            this.file = file;
+            this.rotated = file.resolveSibling(file.getFileName() + ".compacting");
+            this.snapshotter = snapshotter;
+            this.flushes = timing("journal", file);
+            this.ch = openLog(file);
+            // leftovers from a previous run: fold them into a fresh snapshot straight away
+            if (Files.exists(rotated) || ch.size() > 0) { compacting = true; rotateAndCompact(); }
+            this.writer = new Thread(this::writeLoop, "journal-" + file.getFileName());
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        long append(JsonBody record) {
+            ByteArrayOutputStream bo = new ByteArrayOutputStream(256);
+            try (JsonOut j = JsonOut.open(bo)) { record.write(j); } catch (IOException e) { throw new UncheckedIOException(e); }
+            bo.write('\n');
+            return enqueue(bo.toByteArray());
+        }
+
+        synchronized int backlog() { return pending.size(); }
+
+        synchronized long enqueue(byte[] line) {
+            pending.add(line);
+            notifyAll();
+            return ++appendedSeq;
+        }
+
+        synchronized void await(long seq) throws CommitFailed {
+            try {
+                while (durableSeq < seq && !closed) {
+                    if (failure != null && seq <= failedSeq) throw new CommitFailed(file, failure);
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-        } catch (Exception e) {
-            System.err.println("Failed to load tasks: " + e.getMessage());
+        }
+
+        void writeLoop() {
+            while (true) {
+                List<byte[]> batch;
+                long seq;
+                synchronized (this) {
+                    while (pending.isEmpty() && !closed) {
+                        try { wait(); } catch (InterruptedException e) { return; }
+                    }
+                    if (pending.isEmpty()) return;
+                    batch = pending;
+                    pending = new ArrayList<>();
+                    seq = appendedSeq;
+                }
+                long started = System.nanoTime(), bytes = 0, mark = -1;
+                IOException error = null;
+                try {
+                    if (!ch.isOpen()) ch = openLog(file); // a reopen after rotation failed; try again with this batch
+                    mark = ch.size();
+                    for (byte[] rec : batch) {
+                        ByteBuffer buf = ByteBuffer.wrap(rec);
+                        while (buf.hasRemaining()) ch.write(buf);
+                        bytes += rec.length;
+                    }
+                    ch.force(false);
+                } catch (IOException e) {
+                    error = e;
+                    // no torn record may sit in front of the retry: replay drops a bad line up to its
+                    // newline, which a torn record without one would share with the retried record
+                    try { if (mark >= 0) ch.truncate(mark); } catch (IOException ignored) {}
+                }
+                flushes.record(bytes, System.nanoTime() - started);
+                boolean rotate;
+                synchronized (this) {
+                    if (error != null) {
+                        System.err.println("Failed to append to " + file.getFileName() + ": " + error.getMessage()
+                            + (closed ? ", " + (pending.size() + batch.size()) + " records not written" : ", retrying"));
+                        failure = error;
+                        failedSeq = seq;
+                        notifyAll();
+                        if (closed) return;
+                        batch.addAll(pending); // the failed records go first, in order
+                        pending = batch;
+                        try { wait(1000); } catch (InterruptedException e) { return; }
+                        continue;
+                    }
+                    failure = null;
+                    durableSeq = seq;
+                    sinceCompact += batch.size();
+                    rotate = sinceCompact >= COMPACT_EVERY && !compacting;
+                    if (rotate) { compacting = true; sinceCompact = 0; }
+                    notifyAll();
+                }
+                if (rotate) rotateAndCompact();
+            }
+        }
+
+        // runs on the writer thread (or the constructor, before it starts), the only code touching ch
+        void rotateAndCompact() {
+            if (!Files.exists(rotated)) {
+                try {
+                    ch.close();
+                    Files.move(file, rotated, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    System.err.println("Failed to rotate " + file.getFileName() + ": " + e.getMessage());
+                } finally {
+                    // whether or not the move happened, so a failed rotation leaves the log appendable
+                    try { ch = openLog(file); } catch (IOException e) { System.err.println("Failed to reopen " + file.getFileName() + ": " + e.getMessage()); }
+                }
+            }
+            startCompaction();
+        }
+
+        static FileChannel openLog(Path file) throws IOException {
+            return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+
+        void startCompaction() {
+            Thread t = new Thread(() -> {
+                try {
+                    snapshotter.run();
+                    Files.deleteIfExists(rotated);
+                } catch (IOException e) {
+                    System.err.println("Failed to compact " + file.getFileName() + ": " + e.getMessage());
+                } finally {
+                    synchronized (this) { compacting = false; notifyAll(); }
+                }
+            }, "compact-" + file.getFileName());
+            t.setDaemon(true);
+            t.start();
+        }
+
+        // also waits for a compaction in progress, so the files are settled before the workspace is loaded again
+        void close() {
+            synchronized (this) { closed = true; notifyAll(); }
+            try { writer.join(5000); ch.close(); } catch (Exception ignored) {}
+            synchronized (this) {
+                try { while (compacting) wait(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            }
+        }
+
+        static void retire(Path file, Snapshotter snapshotter) throws IOException {
+            Path rotated = file.resolveSibling(file.getFileName() + ".compacting");
+            if (!Files.exists(file) && !Files.exists(rotated)) return;
+            snapshotter.run();
+            Files.deleteIfExists(rotated);
+            Files.deleteIfExists(file);
+        }
+
+        // Replays <file>.compacting then <file>; a torn last line from a crash, or a corrupt line
+        // anywhere, is skipped and the records after it still apply.
+        static int replay(Path file, String[] fields, java.util.function.Consumer<String[]> apply) throws IOException {
+            Path rotated = file.resolveSibling(file.getFileName() + ".compacting");
+            int[] n = {0};
+            for (Path p : new Path[]{ rotated, file }) {
+                JsonIn.forEachLogRecord(p, fields, v -> { if (v[0] != null) { apply.accept(v); n[0]++; } });
+            }
+            return n[0];
         }
     }
 
-    static synchronized void saveSessionsToDisk() {
-        try {
-            List<Map<String,Object>> out = new ArrayList<>();
-            synchronized(sessions) {
-                for(PomodoroSession s: sessions) {
-                    Map<String,Object> m = new LinkedHashMap<>();
-                    m.put("id", s.id);
-                    m.put("taskId", s.taskId);
-                    m.put("start", s.start);
-                    m.put("end", s.end);
-                    m.put("completed", s.completed);
-                    out.add(m);
+    // an acknowledged change whose journal record could not be written
+    static final class CommitFailed extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        CommitFailed(Path file, IOException cause) { super("Not written to " + file.getFileName() + ": " + cause.getMessage(), cause); }
+    }
+
+    // -------------------- Binary snapshots --------------------
+    /*
+      Compact snapshot format used with -Dtaskapp.snapshot=binary (tasks.bin, sessions.bin):
+        "TAB1" magic, kind byte ('T' / 'S'), records..., footer, footer offset (long), "TAB1"
+      Every record starts with a flags byte saying how its fields are stored: ids that are
+      UUIDs as two longs, due dates as an epoch-day varint, instants as epoch millis plus the
+      sub-millisecond nanos, anything else as a varint-length-prefixed UTF-8 string. Values
+      are only packed when they round-trip to the same text, so output is unchanged.
+      Task tags are interned: a record holds an index into the footer's dictionary of distinct
+      tag strings. The footer (record count, dictionary) comes last so the file is written in
+      one pass over the live store, and loading maps the file instead of reading it.
+    */
+    static final class BinarySnapshot {
+        static final int MAGIC = 0x54414231; // "TAB1"
+        // flags byte of a task record
+        static final int TASK_COMPLETED = 1, TASK_UUID_ID = 2, TASK_EPOCH_DUE = 4;
+        // flags byte of a session record
+        static final int SESSION_COMPLETED = 1, SESSION_UUID_ID = 2, SESSION_UUID_TASK = 4, SESSION_INSTANT_START = 8,
+            SESSION_INSTANT_END = 16, SESSION_NO_END = 32;
+
+        static void writeTasks(TaskStore tasks, OutputStream os) throws IOException {
+            BinOut b = new BinOut(os);
+            b.i32(MAGIC); b.u8('T');
+            Map<String,Integer> dict = new LinkedHashMap<>(); // tags -> index in this file's dictionary
+            long n = 0;
+            for (Task t : tasks.snapshot()) {
+                boolean day = t.oddDue == null;
+                b.u8((t.completed ? TASK_COMPLETED : 0) | (t.oddId == null ? TASK_UUID_ID : 0) | (day ? TASK_EPOCH_DUE : 0));
+                b.id(t.oddId, t.oddId == null ? t.key : null);
+                b.str(t.title);
+                if (day) b.varLong(zigzag(t.dueDay)); else b.str(t.oddDue);
+                Integer tag = dict.get(t.tags);
+                if (tag == null) { tag = dict.size(); dict.put(t.tags, tag); }
+                b.varLong(tag);
+                n++;
+            }
+            b.footer(n, dict.keySet());
+        }
+
+        static void writeSessions(SessionStore sessions, OutputStream os) throws IOException {
+            BinOut b = new BinOut(os);
+            b.i32(MAGIC); b.u8('S');
+            long[] n = {0};
+            sessions.forEach(s -> {
+                UUID id = canonicalUuid(s.id), task = canonicalUuid(s.taskId);
+                boolean start = packed(s.start, s.oddStart), end = packed(s.end, s.oddEnd);
+                boolean noEnd = s.end == PomodoroSession.NO_TIME && s.oddEnd == null;
+                b.u8((s.completed ? SESSION_COMPLETED : 0) | (id != null ? SESSION_UUID_ID : 0) | (task != null ? SESSION_UUID_TASK : 0)
+                    | (start ? SESSION_INSTANT_START : 0) | (end ? SESSION_INSTANT_END : 0) | (noEnd ? SESSION_NO_END : 0));
+                b.id(s.id, id);
+                b.id(s.taskId, task);
+                if (start) b.instant(s.start); else b.str(s.startText());
+                if (end) b.instant(s.end); else if (!noEnd) b.str(s.endText());
+                n[0]++;
+            });
+            b.footer(n[0], Collections.emptySet());
+        }
+
+        // an instant that round-trips as epoch millis + sub-millisecond nanos
+        static boolean packed(long nanos, String odd) { return nanos != PomodoroSession.NO_TIME && odd == null; }
+
+        static int readTasks(Path file, java.util.function.Consumer<Task> sink) throws IOException {
+            BinIn in = BinIn.open(file, 'T');
+            try {
+                for (int i = 0; i < in.count; i++) {
+                    int f = in.u8();
+                    Task t;
+                    if ((f & TASK_UUID_ID) != 0) {
+                        UUID key = new UUID(in.buf.getLong(), in.buf.getLong());
+                        String title = in.str();
+                        if ((f & TASK_EPOCH_DUE) != 0) t = new Task(key, null, title, (int) unzigzag(in.varLong()), null, in.dict[(int) in.varLong()]);
+                        else t = new Task(key, null, title, Task.NO_DUE, in.str(), in.dict[(int) in.varLong()]);
+                    } else {
+                        // odd ids and dues go through the text constructor, which works out their compact form
+                        String id = in.str(), title = in.str();
+                        String due = (f & TASK_EPOCH_DUE) != 0 ? LocalDate.ofEpochDay(unzigzag(in.varLong())).toString() : in.str();
+                        t = new Task(id, title, due, in.dict[(int) in.varLong()]);
+                    }
+                    t.completed = (f & TASK_COMPLETED) != 0;
+                    sink.accept(t);
+                }
+            } catch (RuntimeException e) {
+                throw new IOException(file.getFileName() + " is corrupt: " + e);
+            }
+            return in.count;
+        }
+
+        static int readSessions(Path file, java.util.function.Consumer<PomodoroSession> sink) throws IOException {
+            BinIn in = BinIn.open(file, 'S');
+            try {
+                for (int i = 0; i < in.count; i++) {
+                    int f = in.u8();
+                    String id = in.id((f & SESSION_UUID_ID) != 0);
+                    String taskId = in.id((f & SESSION_UUID_TASK) != 0);
+                    PomodoroSession s = new PomodoroSession(id, taskId);
+                    if ((f & SESSION_INSTANT_START) != 0) s.start = in.instant(); else s.setStart(in.str());
+                    if ((f & SESSION_INSTANT_END) != 0) s.end = in.instant(); else if ((f & SESSION_NO_END) == 0) s.setEnd(in.str());
+                    s.completed = (f & SESSION_COMPLETED) != 0;
+                    sink.accept(s);
                 }
+            } catch (RuntimeException e) {
+                throw new IOException(file.getFileName() + " is corrupt: " + e);
             }
-            String json = new GsonLite().toJson(out);
-            Files.write(SESSIONS_FILE, json.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-        } catch (Exception e) {
-            System.err.println("Failed to save sessions: " + e.getMessage());
+            return in.count;
         }
+
+        static long zigzag(long v) { return (v << 1) ^ (v >> 63); }
+
+        static long unzigzag(long v) { return (v >>> 1) ^ -(v & 1); }
     }
 
-    static synchronized void loadSessionsFromDisk() {
-        try {
-            if (!Files.exists(SESSIONS_FILE)) return;
-            String json = new String(Files.readAllBytes(SESSIONS_FILE), StandardCharsets.UTF_8);
-            List<Map<String,String>> arr = new GsonLite().fromJsonList(json);
-            for (Map<String,String> m : arr) {
-                String id = String.valueOf(m.getOrDefault("id", UUID.randomUUID().toString()));
-                String taskId = String.valueOf(m.getOrDefault("taskId",""));
-                String start = String.valueOf(m.getOrDefault("start",""));
-                String end = String.valueOf(m.getOrDefault("end",""));
-                boolean completed = Boolean.parseBoolean(String.valueOf(m.getOrDefault("completed","false")));
-                PomodoroSession s = new PomodoroSession(id, taskId, start);
-                s.end = end; s.completed = completed;
-                sessions.add(s);
-            }
-        } catch (Exception e) {
-            System.err.println("Failed to load sessions: " + e.getMessage());
-        }
-    }
-
-    // -------------------- Tiny JSON helper (GsonLite) --------------------
-    static class GsonLite {
-        String toJson(Object o) {
-            if (o instanceof Map) return mapToJson((Map<?,?>)o);
-            if (o instanceof List) {
-                StringBuilder sb = new StringBuilder();
-                sb.append('[');
-                boolean first = true;
-                for (Object e : (List<?>) o) {
-                    if (!first) sb.append(',');
-                    sb.append(toJson(e));
-                    first = false;
+    // buffered big-endian writer for BinarySnapshot; tracks its offset for the footer pointer
+    static final class BinOut {
+        final OutputStream out;
+        final byte[] buf = new byte[65536];
+        int pos;
+        long flushed;
+
+        BinOut(OutputStream out) { this.out = out; }
+
+        long position() { return flushed + pos; }
+
+        void u8(int v) throws IOException { ensure(1); buf[pos++] = (byte) v; }
+        void i32(int v) throws IOException { ensure(4); for (int s = 24; s >= 0; s -= 8) buf[pos++] = (byte) (v >>> s); }
+        void i64(long v) throws IOException { ensure(8); for (int s = 56; s >= 0; s -= 8) buf[pos++] = (byte) (v >>> s); }
+
+        void varLong(long v) throws IOException {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) { buf[pos++] = (byte) ((v & 0x7F) | 0x80); v >>>= 7; }
+            buf[pos++] = (byte) v;
+        }
+
+        void str(String s) throws IOException {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            varLong(b.length);
+            if (b.length > buf.length - pos) flush();
+            if (b.length > buf.length) { out.write(b); flushed += b.length; return; }
+            System.arraycopy(b, 0, buf, pos, b.length);
+            pos += b.length;
+        }
+
+        void id(String s, UUID u) throws IOException {
+            if (u == null) { str(s); return; }
+            i64(u.getMostSignificantBits()); i64(u.getLeastSignificantBits());
+        }
+
+        void instant(long nanos) throws IOException {
+            varLong(BinarySnapshot.zigzag(Math.floorDiv(nanos, 1_000_000L))); varLong(Math.floorMod(nanos, 1_000_000L));
+        }
+
+        void footer(long count, Collection<String> dict) throws IOException {
+            long at = position();
+            varLong(count);
+            varLong(dict.size());
+            for (String s : dict) str(s);
+            i64(at); i32(BinarySnapshot.MAGIC);
+            flush();
+        }
+
+        void ensure(int n) throws IOException { if (pos + n > buf.length) flush(); }
+
+        void flush() throws IOException { if (pos > 0) { out.write(buf, 0, pos); flushed += pos; pos = 0; } }
+    }
+
+    // reads a BinarySnapshot through a read-only mapping; the footer is parsed up front
+    static final class BinIn {
+        final MappedByteBuffer buf;
+        final int count;
+        final String[] dict;
+
+        BinIn(MappedByteBuffer buf, int count, String[] dict) { this.buf = buf; this.count = count; this.dict = dict; }
+
+        static BinIn open(Path file, char kind) throws IOException {
+            MappedByteBuffer m;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = ch.size();
+                if (size > Integer.MAX_VALUE) throw new IOException(file.getFileName() + " is too large to map");
+                m = ch.map(FileChannel.MapMode.READ_ONLY, 0, size); // stays valid after the channel closes
+            }
+            int size = m.limit();
+            if (size < 17 || m.getInt(0) != BinarySnapshot.MAGIC || m.get(4) != kind || m.getInt(size - 4) != BinarySnapshot.MAGIC)
+                throw new IOException(file.getFileName() + " is not a " + (kind == 'T' ? "task" : "session") + " snapshot");
+            long footer = m.getLong(size - 12);
+            if (footer < 5 || footer > size - 12) throw new IOException(file.getFileName() + " has a bad footer offset");
+            BinIn in = new BinIn(m, 0, null);
+            m.position((int) footer);
+            int count = (int) in.varLong();
+            String[] dict = new String[(int) in.varLong()];
+            for (int i = 0; i < dict.length; i++) dict[i] = in.str();
+            m.position(5);
+            return new BinIn(m, count, dict);
+        }
+
+        int u8() { return buf.get() & 0xff; }
+
+        long varLong() {
+            long v = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buf.get();
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+        }
+
+        String str() {
+            int n = (int) varLong();
+            byte[] b = new byte[n];
+            buf.get(b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+
+        String id(boolean uuid) { return uuid ? new UUID(buf.getLong(), buf.getLong()).toString() : str(); }
+
+        long instant() { return BinarySnapshot.unzigzag(varLong()) * 1_000_000L + varLong(); }
+    }
+
+    // -------------------- Streaming JSON writer --------------------
+    interface JsonBody { void write(JsonOut j) throws IOException; }
+
+    /*
+      Writes JSON straight to an OutputStream through a fixed 8 KB buffer, so a response or
+      snapshot never exists as a whole String/byte[] on the heap. Writers are taken from a
+      bounded pool rather than kept per thread: with a virtual thread per request a ThreadLocal
+      would allocate a fresh buffer for every request. When the pool is empty open() allocates,
+      and close() returns at most JSON_BUFFERS idle writers to it.
+      Commas are inserted automatically; close() flushes but leaves the stream open.
+    */
+    static final class JsonOut implements Closeable {
+        static final ArrayBlockingQueue<JsonOut> POOL = new ArrayBlockingQueue<>(JSON_BUFFERS);
+        static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+        final byte[] buf = new byte[8192];
+        final boolean[] needComma = new boolean[64];
+        int pos;
+        int depth;
+        boolean afterName;
+        boolean inUse;
+        OutputStream out;
+
+        // nested use on one thread (e.g. a journal record written mid-response) just takes another
+        static JsonOut open(OutputStream out) {
+            JsonOut j = POOL.poll();
+            if (j == null) j = new JsonOut();
+            j.out = out; j.pos = 0; j.depth = 0; j.afterName = false; j.inUse = true;
+            return j;
+        }
+
+        JsonOut beginObject() throws IOException { separate(); put('{'); needComma[++depth] = false; return this; }
+        JsonOut endObject() throws IOException { depth--; put('}'); return this; }
+        JsonOut beginArray() throws IOException { separate(); put('['); needComma[++depth] = false; return this; }
+        JsonOut endArray() throws IOException { depth--; put(']'); return this; }
+
+        JsonOut name(String n) throws IOException { separate(); string(n); put(':'); afterName = true; return this; }
+
+        JsonOut value(String v) throws IOException { separate(); if (v == null) ascii("null"); else string(v); return this; }
+        JsonOut value(boolean v) throws IOException { separate(); ascii(v ? "true" : "false"); return this; }
+        JsonOut value(long v) throws IOException {
+            separate();
+            if (v == Long.MIN_VALUE) { ascii(Long.toString(v)); return this; }
+            ensure(20);
+            if (v < 0) { buf[pos++] = '-'; v = -v; }
+            int start = pos;
+            do { buf[pos++] = (byte) ('0' + (v % 10)); v /= 10; } while (v != 0);
+            for (int i = start, k = pos - 1; i < k; i++, k--) { byte b = buf[i]; buf[i] = buf[k]; buf[k] = b; }
+            return this;
+        }
+
+        void separate() throws IOException {
+            if (afterName) { afterName = false; return; }
+            if (depth > 0) { if (needComma[depth]) put(','); needComma[depth] = true; }
+        }
+
+        void string(String s) throws IOException {
+            put('"');
+            for (int i = 0, n = s.length(); i < n; i++) {
+                char c = s.charAt(i);
+                ensure(6);
+                if (c == '"' || c == '\\') { buf[pos++] = '\\'; buf[pos++] = (byte) c; }
+                else if (c == '\n') { buf[pos++] = '\\'; buf[pos++] = 'n'; }
+                else if (c == '\r') { buf[pos++] = '\\'; buf[pos++] = 'r'; }
+                else if (c == '\t') { buf[pos++] = '\\'; buf[pos++] = 't'; }
+                else if (c < 0x20) { buf[pos++] = '\\'; buf[pos++] = 'u'; buf[pos++] = '0'; buf[pos++] = '0'; buf[pos++] = HEX[c >> 4]; buf[pos++] = HEX[c & 15]; }
+                else if (c < 0x80) buf[pos++] = (byte) c;
+                else if (c < 0x800) { buf[pos++] = (byte) (0xc0 | (c >> 6)); buf[pos++] = (byte) (0x80 | (c & 0x3f)); }
+                else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buf[pos++] = (byte) (0xf0 | (cp >> 18)); buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f)); buf[pos++] = (byte) (0x80 | (cp & 0x3f));
                 }
-                sb.append(']');
-                return sb.toString();
+                else { buf[pos++] = (byte) (0xe0 | (c >> 12)); buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f)); buf[pos++] = (byte) (0x80 | (c & 0x3f)); }
+            }
+            put('"');
+        }
+
+        void ascii(String s) throws IOException { for (int i = 0; i < s.length(); i++) put(s.charAt(i)); }
+
+        void put(char c) throws IOException { ensure(1); buf[pos++] = (byte) c; }
+
+        void ensure(int n) throws IOException { if (pos + n > buf.length) flush(); }
+
+        void flush() throws IOException { if (pos > 0) { out.write(buf, 0, pos); pos = 0; } }
+
+        public void close() throws IOException {
+            if (!inUse) return; // closed twice: it may already be back in the pool
+            try { flush(); } finally { out = null; inUse = false; POOL.offer(this); }
+        }
+    }
+
+    // -------------------- Streaming JSON reader --------------------
+    /*
+      Single-pass pull parser over a FileChannel with a fixed 64 KB buffer. Decodes UTF-8 and every
+      JSON escape as it goes, so quotes inside titles round-trip. readObject() fills a
+      caller-owned String[] slot per known field name; loading builds no per-record map.
+    */
+    static final class JsonIn implements Closeable {
+        final ReadableByteChannel ch;
+        final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        final StringBuilder sb = new StringBuilder();
+        final boolean[] first = new boolean[64]; // per nesting level; deeper input is rejected
+        int depth;
+        long offset; // bytes consumed before the current buffer, for error messages
+
+        JsonIn(ReadableByteChannel ch) { this.ch = ch; buf.limit(0); }
+
+        static JsonIn open(Path file) throws IOException { return new JsonIn(FileChannel.open(file, StandardOpenOption.READ)); }
+
+        /*
+          Calls sink for each object in a file holding either a JSON array of objects (tasks.json,
+          sessions.json) or objects one per line. The slot array is reused between calls; a
+          missing or empty file is 0.
+        */
+        static int forEachRecord(Path file, String[] fields, java.util.function.Consumer<String[]> sink) throws IOException {
+            if (!Files.exists(file)) return 0;
+            int n = 0;
+            String[] v = new String[fields.length];
+            try (JsonIn in = open(file)) {
+                if (in.peek() != '[') return in.eachLine(file, fields, sink);
+                in.beginArray();
+                while (in.hasNext()) { in.readObject(fields, v); sink.accept(v); n++; }
+                in.endArray();
             }
-            if (o instanceof String) return "\"" + escape((String)o) + "\"";
-            if (o instanceof Number || o instanceof Boolean) return String.valueOf(o);
-            return "\"" + escape(String.valueOf(o)) + "\"";
-        }
-        String mapToJson(Map<?,?> m) {
-            StringBuilder sb = new StringBuilder();
-            sb.append('{');
-            boolean first = true;
-            for (Map.Entry<?,?> e : m.entrySet()) {
-                if (!first) sb.append(',');
-                sb.append(toJson(String.valueOf(e.getKey())));
-                sb.append(':');
-                sb.append(toJson(e.getValue()));
-                first = false;
-            }
-            sb.append('}');
-            return sb.toString();
-        }
-        String escape(String s) {
-            return s.replace("\\","\\\\").replace("\"","\\\"").replace("\n","\\n").replace("\r","");
-        }
-
-        // Parser: returns List<Map<String,String>>
-        List<Map<String,String>> fromJsonList(String s) {
-            s = s.trim();
-            List<Map<String,String>> out = new ArrayList<>();
-            if (!s.startsWith("[")) return out;
-            int i = 1;
-            while (i < s.length()) {
-                int o = s.indexOf('{', i);
-                if (o < 0) break;
-                int c = findMatchingBrace(s, o);
-                if (c < 0) break;
-                String obj = s.substring(o+1, c).trim();
-                Map<String,String> map = new HashMap<>();
-                List<String> parts = splitTopLevel(obj, ',');
-                for (String part : parts) {
-                    List<String> kv = splitTopLevel(part, ':');
-                    if (kv.size() < 2) continue;
-                    String key = trimQuotes(kv.get(0));
-                    String val = kv.get(1).trim();
-                    if (val.startsWith("\"")) val = trimQuotes(val);
-                    map.put(key, val);
+            return n;
+        }
+
+        // a journal: like forEachRecord, but a line that is an array is a group of records
+        static int forEachLogRecord(Path file, String[] fields, java.util.function.Consumer<String[]> sink) throws IOException {
+            if (!Files.exists(file)) return 0;
+            try (JsonIn in = open(file)) { return in.eachLine(file, fields, sink); }
+        }
+
+        /*
+          One object per line, or an array of objects on a line, whose records reach sink only
+          once the whole array has been read. A line that doesn't parse is reported and skipped
+          up to the next newline, so one bad line (a torn last one after a crash, or a group
+          that didn't finish writing) costs only itself.
+        */
+        int eachLine(Path file, String[] fields, java.util.function.Consumer<String[]> sink) throws IOException {
+            int n = 0;
+            String[] v = new String[fields.length];
+            List<String[]> group = new ArrayList<>();
+            while (peek() != -1) {
+                long start = position();
+                boolean grouped = peek() == '[';
+                group.clear();
+                try {
+                    if (grouped) {
+                        beginArray();
+                        while (hasNext()) { readObject(fields, v); group.add(v.clone()); }
+                        endArray();
+                    } else {
+                        readObject(fields, v);
+                    }
+                } catch (IOException e) {
+                    skipLineFrom(start);
+                    System.err.println((peek() == -1 ? "Ignoring torn record at end of " : "Skipping bad record in ")
+                        + file.getFileName() + ": " + e.getMessage());
+                    continue;
                 }
-                out.add(map);
-                i = c+1;
+                if (!grouped) { sink.accept(v); n++; }
+                else for (String[] g : group) { sink.accept(g); n++; }
             }
-            return out;
+            return n;
         }
-        int findMatchingBrace(String s, int start) {
-            int depth = 0;
-            for (int i = start; i < s.length(); ++i) {
-                char ch = s.charAt(i);
-                if (ch == '{') depth++;
-                else if (ch == '}') { depth--; if (depth == 0) return i; }
+
+        void readObject(String[] fields, String[] v) throws IOException {
+            Arrays.fill(v, null);
+            beginObject();
+            while (hasNext()) {
+                int idx = nextNameIndex(fields);
+                if (idx >= 0) v[idx] = nextScalar();
+                else skipValue();
             }
+            endObject();
+        }
+
+        void beginArray() throws IOException { expect('['); nest(); }
+        void endArray() throws IOException { expect(']'); depth--; }
+        void beginObject() throws IOException { expect('{'); nest(); }
+        void endObject() throws IOException { expect('}'); depth--; }
+
+        void nest() throws IOException {
+            if (depth + 1 >= first.length) throw error("nested deeper than " + (first.length - 1) + " levels");
+            first[++depth] = true;
+        }
+
+        // true if another element follows in the current array/object; consumes the comma
+        boolean hasNext() throws IOException {
+            int c = peek();
+            if (c == ']' || c == '}') return false;
+            if (!first[depth]) expect(',');
+            first[depth] = false;
+            return true;
+        }
+
+        // reads a member name and its ':' and returns its index in names, without allocating it
+        int nextNameIndex(String[] names) throws IOException {
+            readString();
+            expect(':');
+            for (int i = 0; i < names.length; i++) if (names[i].contentEquals(sb)) return i;
             return -1;
         }
-        List<String> splitTopLevel(String s, char sep) {
-            List<String> parts = new ArrayList<>();
-            StringBuilder cur = new StringBuilder();
-            boolean inQuotes = false;
-            for (int i = 0; i < s.length(); ++i) {
-                char ch = s.charAt(i);
-                if (ch == '"' ) inQuotes = !inQuotes;
-                if (ch == sep && !inQuotes) { parts.add(cur.toString()); cur.setLength(0); }
-                else cur.append(ch);
+
+        // string value, or the literal text of a number/true/false; null for JSON null
+        String nextScalar() throws IOException {
+            int c = peek();
+            if (c == '"') { readString(); return sb.toString(); }
+            if (c == '{' || c == '[') throw error("expected a scalar");
+            sb.setLength(0);
+            while ((c = peekRaw()) != -1 && c != ',' && c != '}' && c != ']' && !isSpace(c)) sb.append((char) read());
+            if (sb.length() == 0) throw error("expected a value");
+            return "null".contentEquals(sb) ? null : sb.toString();
+        }
+
+        void skipValue() throws IOException {
+            int c = peek();
+            if (c == '{') { beginObject(); while (hasNext()) { readString(); expect(':'); skipValue(); } endObject(); }
+            else if (c == '[') { beginArray(); while (hasNext()) skipValue(); endArray(); }
+            else nextScalar();
+        }
+
+        // reads a quoted string into sb
+        void readString() throws IOException {
+            expect('"');
+            sb.setLength(0);
+            while (true) {
+                int b = read();
+                if (b == -1) throw error("unterminated string");
+                if (b == '"') return;
+                if (b == '\\') {
+                    int e = read();
+                    switch (e) {
+                        case '"': case '\\': case '/': sb.append((char) e); break;
+                        case 'b': sb.append('\b'); break;
+                        case 'f': sb.append('\f'); break;
+                        case 'n': sb.append('\n'); break;
+                        case 'r': sb.append('\r'); break;
+                        case 't': sb.append('\t'); break;
+                        case 'u': {
+                            int cp = 0;
+                            for (int i = 0; i < 4; i++) {
+                                int h = Character.digit(read(), 16);
+                                if (h < 0) throw error("bad \\u escape");
+                                cp = (cp << 4) | h;
+                            }
+                            sb.append((char) cp); // surrogate pairs arrive as two escapes
+                            break;
+                        }
+                        default: throw error("bad escape");
+                    }
+                } else if (b < 0x80) {
+                    sb.append((char) b);
+                } else {
+                    int extra = b >= 0xf0 ? 3 : b >= 0xe0 ? 2 : 1;
+                    int cp = b & (0x3f >> extra);
+                    for (int i = 0; i < extra; i++) {
+                        int cb = read();
+                        if (cb == -1) throw error("unterminated string");
+                        cp = (cp << 6) | (cb & 0x3f);
+                    }
+                    sb.appendCodePoint(cp);
+                }
             }
-            if (cur.length() > 0) parts.add(cur.toString());
-            return parts;
         }
-        String trimQuotes(String s) { s = s.trim(); if (s.startsWith("\"") && s.endsWith("\"")) return s.substring(1, s.length()-1); return s; }
+
+        void expect(char c) throws IOException {
+            int got = peek();
+            if (got != c) throw error("expected '" + c + "'");
+            read();
+        }
+
+        // next non-whitespace byte without consuming it, -1 at end of input
+        int peek() throws IOException {
+            int c;
+            while ((c = peekRaw()) != -1 && isSpace(c)) read();
+            return c;
+        }
+
+        int peekRaw() throws IOException {
+            if (!buf.hasRemaining() && !fill()) return -1;
+            return buf.get(buf.position()) & 0xff;
+        }
+
+        int read() throws IOException {
+            if (!buf.hasRemaining() && !fill()) return -1;
+            return buf.get() & 0xff;
+        }
+
+        boolean fill() throws IOException {
+            offset += buf.limit();
+            buf.clear();
+            int n;
+            do { n = ch.read(buf); } while (n == 0);
+            buf.flip();
+            return n > 0;
+        }
+
+        static boolean isSpace(int c) { return c == ' ' || c == '\n' || c == '\r' || c == '\t'; }
+
+        IOException error(String msg) { return new IOException(msg + " at byte " + position()); }
+
+        long position() { return offset + buf.position(); }
+
+        // rewinds to start (a parse may have read past the bad line) and drops everything up to the next newline
+        void skipLineFrom(long start) throws IOException {
+            ((FileChannel) ch).position(start);
+            offset = start;
+            buf.clear().limit(0);
+            depth = 0;
+            int c;
+            while ((c = read()) != -1 && c != '\n') {}
+        }
+
+        public void close() throws IOException { ch.close(); }
     }
 }
@@ -0,0 +1,67 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournalReplayTest {
+    @TempDir Path dir;
+
+    List<String> replayIds(String journal) throws Exception {
+        Path file = dir.resolve("tasks.journal");
+        Files.write(file, journal.getBytes(StandardCharsets.UTF_8));
+        List<String> ids = new ArrayList<>();
+        int n = TaskApp.Journal.replay(file, TaskApp.TASK_FIELDS, v -> ids.add(v[0]));
+        assertEquals(ids.size(), n);
+        return ids;
+    }
+
+    static String put(String id) { return "{\"id\":\"" + id + "\",\"title\":\"t\",\"due\":\"2026-01-01\",\"completed\":false,\"tags\":\"\",\"op\":\"put\"}\n"; }
+
+    @Test
+    void corruptMiddleLineKeepsLaterRecords() throws Exception {
+        String journal = put("a1") + "{\"id\":\"a2\",\"title\":\"unterminated\n" + put("a3") + put("a4");
+        assertEquals(List.of("a1", "a3", "a4"), replayIds(journal));
+    }
+
+    @Test
+    void tornLastLineIsDropped() throws Exception {
+        String journal = put("a1") + put("a2") + "{\"id\":\"a3\",\"ti";
+        assertEquals(List.of("a1", "a2"), replayIds(journal));
+    }
+
+    static String batch(String... ids) {
+        StringBuilder sb = new StringBuilder("[");
+        for (String id : ids) sb.append(sb.length() > 1 ? "," : "").append(put(id).trim());
+        return sb.append("]\n").toString();
+    }
+
+    @Test
+    void batchLineAppliesAllItsRecords() throws Exception {
+        String journal = put("a1") + batch("b1", "b2", "b3") + put("a2");
+        assertEquals(List.of("a1", "b1", "b2", "b3", "a2"), replayIds(journal));
+    }
+
+    @Test
+    void tornBatchAppliesNothing() throws Exception {
+        String full = batch("b1", "b2", "b3");
+        String journal = put("a1") + full.substring(0, full.length() - 20);
+        assertEquals(List.of("a1"), replayIds(journal));
+    }
+
+    @Test
+    void corruptBatchInTheMiddleAppliesNothingButKeepsLaterRecords() throws Exception {
+        String journal = put("a1") + batch("b1", "b2").replace(",{", ",{{") + put("a2");
+        assertEquals(List.of("a1", "a2"), replayIds(journal));
+    }
+
+    @Test
+    void garbageLineBetweenRecordsIsSkipped() throws Exception {
+        String journal = put("a1") + "not json at all\n" + put("a2");
+        assertEquals(List.of("a1", "a2"), replayIds(journal));
+    }
+}
@@ -0,0 +1,112 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RestartOrderTest {
+    static final String DUE = "2026-01-01";
+    @TempDir Path dir;
+
+    // a workspace of its own under taskapp.dataDir, so runs don't see each other's files
+    static TaskApp.Workspace open(String name) throws Exception {
+        TaskApp.Workspace w = new TaskApp.Workspace(name);
+        w.acquire();
+        w.release();
+        return w;
+    }
+
+    static void add(TaskApp.Workspace w, String id) throws Exception {
+        TaskApp.Task t = new TaskApp.Task(id, id, DUE, "");
+        long seq;
+        synchronized (w.tasks.lockFor(id)) { w.tasks.put(t); seq = TaskApp.journalTask(w, t); }
+        TaskApp.commitTasks(w, seq);
+    }
+
+    static List<String> inPriorityOrder(TaskApp.Workspace w) {
+        List<String> ids = new ArrayList<>();
+        for (TaskApp.Task t : w.tasks.inPriorityOrder()) ids.add(t.id());
+        return ids;
+    }
+
+    @Test
+    void tiesKeepInsertionOrderAcrossRestarts() throws Exception {
+        String name = "order-" + UUID.randomUUID().toString().substring(0, 8);
+        List<String> ids = new ArrayList<>();
+        for (int i = 1; i <= 15; i++) ids.add("t" + i);
+
+        TaskApp.Workspace w = open(name);
+        for (String id : ids) add(w, id);
+        assertEquals(ids, inPriorityOrder(w));
+        w.close(true);
+
+        // the second open replays the journal and compacts it into a snapshot, the third loads that snapshot
+        for (int restart = 0; restart < 2; restart++) {
+            w = open(name);
+            assertEquals(ids, inPriorityOrder(w));
+            w.close(true);
+        }
+    }
+
+    // ids of the /exportCSV rows, served straight from w
+    static List<String> exportCsvIds(TaskApp.Workspace w) throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/exportCSV", ex -> TaskApp.handleExport(ex, w));
+        server.start();
+        try {
+            URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/exportCSV");
+            String body = HttpClient.newHttpClient().send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString()).body();
+            List<String> ids = new ArrayList<>();
+            String[] rows = body.split("\n");
+            for (int i = 1; i < rows.length; i++) ids.add(rows[i].substring(0, rows[i].indexOf(',')));
+            return ids;
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void exportCsvKeepsInsertionOrderAcrossRestarts() throws Exception {
+        String name = "csv-" + UUID.randomUUID().toString().substring(0, 8);
+        List<String> ids = new ArrayList<>();
+        for (int i = 1; i <= 15; i++) ids.add("t" + i);
+
+        TaskApp.Workspace w = open(name);
+        for (String id : ids) add(w, id);
+        assertEquals(ids, exportCsvIds(w));
+        w.close(true);
+
+        for (int restart = 0; restart < 2; restart++) {
+            w = open(name);
+            assertEquals(ids, exportCsvIds(w));
+            w.close(true);
+        }
+    }
+
+    // the binary format is only picked at startup (taskapp.snapshot), so it's round-tripped directly
+    @Test
+    void binarySnapshotKeepsInsertionOrder() throws Exception {
+        List<String> ids = new ArrayList<>();
+        TaskApp.TaskStore tasks = new TaskApp.TaskStore();
+        for (int i = 1; i <= 15; i++) { ids.add("t" + i); tasks.load(new TaskApp.Task("t" + i, "t" + i, DUE, "")); }
+        Path file = dir.resolve("tasks.bin");
+        try (OutputStream os = Files.newOutputStream(file)) { TaskApp.BinarySnapshot.writeTasks(tasks, os); }
+
+        TaskApp.TaskStore loaded = new TaskApp.TaskStore();
+        TaskApp.BinarySnapshot.readTasks(file, loaded::load);
+        List<String> got = new ArrayList<>();
+        for (TaskApp.Task t : loaded.inPriorityOrder()) got.add(t.id());
+        assertEquals(ids, got);
+    }
+}
@@ -0,0 +1,59 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class TaskStoreTest {
+    static List<String> inPriorityOrder(TaskApp.TaskStore tasks) {
+        List<String> ids = new ArrayList<>();
+        for (TaskApp.Task t : tasks.inPriorityOrder()) ids.add(t.id());
+        return ids;
+    }
+
+    @Test
+    void editReplacesTheIndexedCopy() {
+        TaskApp.TaskStore tasks = new TaskApp.TaskStore();
+        tasks.put(new TaskApp.Task("a", "write report", "2026-01-01", "work, urgent"));
+        tasks.put(new TaskApp.Task("b", "read book", "2026-01-01", "home"));
+
+        TaskApp.Task edit = tasks.get("a").copy();
+        edit.title = "write summary";
+        edit.setTags("work");
+        tasks.put(edit);
+
+        assertEquals(List.of("a", "b"), inPriorityOrder(tasks));
+        assertEquals(2, tasks.dueBetween(Long.MIN_VALUE, Long.MAX_VALUE).size());
+        assertEquals(1, tasks.withTerm("write", false).size());
+        assertEquals(1, tasks.withTerm("summary", false).size());
+        assertEquals(0, tasks.withTerm("report", false).size());
+        assertEquals(1, tasks.taggedWith("work").size());
+        assertEquals(0, tasks.taggedWith("urgent").size());
+        assertEquals(0, tasks.withTerm("urgent", false).size());
+    }
+
+    @Test
+    void lookupsNeverMissATaskBeingEdited() throws Exception {
+        TaskApp.TaskStore tasks = new TaskApp.TaskStore();
+        tasks.put(new TaskApp.Task("a", "write 0", "2026-01-01", "work"));
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger misses = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                if (tasks.withTerm("write", false).isEmpty() || tasks.taggedWith("work").isEmpty()) misses.incrementAndGet();
+            }
+        });
+        reader.start();
+        for (int i = 1; i <= 20000; i++) {
+            TaskApp.Task edit = tasks.get("a").copy();
+            edit.title = "write " + i;
+            tasks.put(edit);
+        }
+        done.set(true);
+        reader.join();
+        assertEquals(0, misses.get());
+        assertEquals(1, tasks.withTerm("20000", false).size());
+    }
+}
@@ -0,0 +1,38 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.sun.net.httpserver.HttpServer;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class WorkspaceHeaderTest {
+    static Optional<String> vary(String path, String workspace) throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/tasks", TaskApp.inWorkspace(TaskApp::handleTasks));
+        server.createContext(TaskApp.WORKSPACE_PREFIX, TaskApp.inWorkspace(TaskApp::handleTasks));
+        server.start();
+        try {
+            HttpRequest.Builder req = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path));
+            if (workspace != null) req.header(TaskApp.WORKSPACE_HEADER, workspace);
+            HttpResponse<String> res = HttpClient.newHttpClient().send(req.build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, res.statusCode());
+            return res.headers().firstValue("Vary");
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void headerSelectedResponsesVaryOnTheHeader() throws Exception {
+        String name = "vary-" + UUID.randomUUID().toString().substring(0, 8);
+        assertEquals(Optional.of(TaskApp.WORKSPACE_HEADER), vary("/tasks", name));
+        assertEquals(Optional.of(TaskApp.WORKSPACE_HEADER), vary("/tasks?since=0", name));
+        // the path names the workspace, the header plays no part
+        assertEquals(Optional.empty(), vary(TaskApp.WORKSPACE_PREFIX + name + "/tasks", null));
+    }
+}
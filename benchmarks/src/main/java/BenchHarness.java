@@ -0,0 +1,131 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import taskbuddy.bench.Harness;
+
+/*
+  Harness over TaskApp's package-private stores and helpers. It has to share TaskApp's (default)
+  package to reach them; see taskbuddy.bench.Harness.
+*/
+public class BenchHarness implements Harness {
+    // never loaded or persisted: the benchmarks fill and read its stores directly
+    final TaskApp.Workspace ws = new TaskApp.Workspace(TaskApp.DEFAULT_WORKSPACE);
+
+    @Override
+    public void putTask(String id, String title, String due, boolean completed, String tags) {
+        ws.tasks.put(TaskApp.taskFromFields(new String[]{id, title, due, String.valueOf(completed), tags, null}));
+    }
+
+    @Override
+    public void editTask(String id, String title) {
+        synchronized (ws.tasks.lockFor(id)) {
+            TaskApp.Task cur = ws.tasks.get(id);
+            if (cur == null) return;
+            TaskApp.Task t = cur.copy();
+            t.title = title;
+            t.computeMeta();
+            ws.tasks.put(t);
+        }
+    }
+
+    @Override
+    public void addSession(String id, String taskId, String start, String end, boolean completed) {
+        ws.sessions.add(TaskApp.sessionFromFields(new String[]{id, taskId, start, end, String.valueOf(completed), null}));
+    }
+
+    @Override
+    public int taskCount() { return ws.tasks.size(); }
+
+    @Override
+    public void writeTaskList(OutputStream out) throws IOException {
+        TaskApp.writeJson(out, j -> {
+            j.beginArray();
+            for (TaskApp.Task t : ws.tasks.inPriorityOrder()) TaskApp.writeTask(j, t, true);
+            j.endArray();
+        });
+    }
+
+    @Override
+    public void writeTasksJson(OutputStream out) throws IOException {
+        TaskApp.writeJson(out, j -> TaskApp.writeTasksJson(ws.tasks, j));
+    }
+
+    @Override
+    public int readTasksJson(byte[] json, Consumer<Object> sink) throws IOException {
+        int n = 0;
+        String[] v = new String[TaskApp.TASK_FIELDS.length];
+        try (TaskApp.JsonIn in = new TaskApp.JsonIn(Channels.newChannel(new ByteArrayInputStream(json)))) {
+            in.beginArray();
+            while (in.hasNext()) { in.readObject(TaskApp.TASK_FIELDS, v); sink.accept(TaskApp.taskFromFields(v)); n++; }
+            in.endArray();
+        }
+        return n;
+    }
+
+    @Override
+    public void snapshotTasks(Path file, boolean binary) throws IOException {
+        if (binary) TaskApp.writeAtomically(file, os -> TaskApp.BinarySnapshot.writeTasks(ws.tasks, os));
+        else TaskApp.writeAtomically(file, os -> TaskApp.writeJson(os, j -> TaskApp.writeTasksJson(ws.tasks, j)));
+    }
+
+    @Override
+    public Map<String,String> parseForm(String body) { return TaskApp.parseForm(body); }
+
+    @Override
+    public String urlDecode(String s) { return TaskApp.urlDecode(s); }
+
+    @Override
+    public void rebuildStats() throws IOException { ws.stats.rebuild(ws.sessions); }
+
+    @Override
+    public int queryStats(String from, String to, String groupBy) {
+        long f = from != null ? LocalDate.parse(from).toEpochDay() : Long.MIN_VALUE;
+        long t = to != null ? LocalDate.parse(to).toEpochDay() : Long.MAX_VALUE;
+        return ws.stats.query(f, t, groupBy, new long[3]).size();
+    }
+
+    @Override
+    public Latencies newLatencies() {
+        TaskApp.LatencyHistogram h = new TaskApp.LatencyHistogram();
+        return new Latencies() {
+            @Override
+            public void record(long nanos) { h.record(nanos); }
+
+            @Override
+            public long count() {
+                long n = 0;
+                for (long c : h.snapshot()) n += c;
+                return n;
+            }
+
+            @Override
+            public long max() { return h.max.get(); }
+
+            @Override
+            public double mean() {
+                long n = count();
+                return n == 0 ? 0 : h.sumNanos.sum() / (double) n;
+            }
+
+            @Override
+            public long percentile(double p) {
+                long[] c = h.snapshot();
+                long n = 0;
+                for (long x : c) n += x;
+                return n == 0 ? 0 : TaskApp.LatencyHistogram.quantile(c, n, p / 100.0, h.max.get());
+            }
+        };
+    }
+
+    @Override
+    public void startServer() throws Exception { TaskApp.main(new String[0]); }
+
+    @Override
+    public void stopServer() { if (TaskApp.server != null) TaskApp.shutdown(TaskApp.server); }
+}
@@ -0,0 +1,14 @@
+package taskbuddy.bench;
+
+import java.io.OutputStream;
+
+// discards what is written but counts it, so benchmarks can return the size and keep the work alive
+final class CountingStream extends OutputStream {
+    long bytes;
+
+    @Override
+    public void write(int b) { bytes++; }
+
+    @Override
+    public void write(byte[] b, int off, int len) { bytes += len; }
+}
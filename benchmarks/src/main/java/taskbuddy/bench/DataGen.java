@@ -0,0 +1,123 @@
+package taskbuddy.bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.UUID;
+
+/*
+  Synthetic tasks and pomodoro sessions, reproducible from a seed. Due dates spread from a month
+  overdue to two months out, so all three priorities show up; sessions are 25 minutes, in time
+  order over the last 90 days (as the server records them), and mostly completed.
+
+    java -cp benchmarks/target/benchmarks.jar taskbuddy.bench.DataGen <dir> <tasks> <sessions> [seed]
+
+  writes <dir>/tasks.json and <dir>/sessions.json in the server's format.
+*/
+public final class DataGen {
+    static final String[] VERBS = {"Write", "Review", "Plan", "Fix", "Call", "Prepare", "Read", "Update", "Design", "Test", "Clean", "Buy", "Submit", "Email", "Refactor"};
+    static final String[] NOUNS = {"report", "slides", "budget", "meeting notes", "landing page", "invoice", "groceries", "chapter", "release", "dashboard", "lab assignment", "resume", "backlog", "tests", "newsletter"};
+    static final String[] TAGS = {"work", "home", "urgent", "study", "ui", "finance", "health", "10marks"};
+    static final long SESSION_SECONDS = 25 * 60;
+
+    public interface TaskSink { void accept(String id, String title, String due, boolean completed, String tags); }
+
+    public interface SessionSink { void accept(String id, String taskId, String start, String end, boolean completed); }
+
+    final Random rnd;
+    final LocalDate today = LocalDate.now();
+
+    public DataGen(long seed) { rnd = new Random(seed); }
+
+    // returns the generated ids, for sessions() and for clients that edit tasks
+    public String[] tasks(int n, TaskSink sink) {
+        String[] ids = new String[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = uuid();
+            String title = VERBS[rnd.nextInt(VERBS.length)] + " " + NOUNS[rnd.nextInt(NOUNS.length)] + " " + (i % 100);
+            String due = today.plusDays(rnd.nextInt(90) - 30).toString();
+            StringBuilder tags = new StringBuilder();
+            for (int k = rnd.nextInt(3); k > 0; k--) {
+                if (tags.length() > 0) tags.append(',');
+                tags.append(TAGS[rnd.nextInt(TAGS.length)]);
+            }
+            sink.accept(ids[i], title, due, rnd.nextInt(10) < 3, tags.toString());
+        }
+        return ids;
+    }
+
+    public void sessions(int n, String[] taskIds, SessionSink sink) {
+        long now = Instant.now().getEpochSecond();
+        long t = now - 90L * 86400;
+        long step = Math.max(1, 90L * 86400 / Math.max(1, n));
+        for (int i = 0; i < n; i++) {
+            t += 1 + rnd.nextInt((int) Math.min(Integer.MAX_VALUE, 2 * step));
+            Instant start = Instant.ofEpochSecond(Math.min(t, now), rnd.nextInt(1_000_000_000));
+            boolean completed = rnd.nextInt(100) < 85;
+            String end = completed ? start.plusSeconds(SESSION_SECONDS).toString() : "";
+            sink.accept(uuid(), taskIds[rnd.nextInt(taskIds.length)], start.toString(), end, completed);
+        }
+    }
+
+    String uuid() {
+        long hi = (rnd.nextLong() & ~0xF000L) | 0x4000L;
+        long lo = (rnd.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(hi, lo).toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: DataGen <dir> <tasks> <sessions> [seed]");
+            System.exit(2);
+        }
+        Path dir = Paths.get(args[0]);
+        write(dir, Integer.parseInt(args[1]), Integer.parseInt(args[2]), args.length > 3 ? Long.parseLong(args[3]) : 42);
+    }
+
+    // tasks.json and sessions.json under dir; returns the task ids
+    public static String[] write(Path dir, int tasks, int sessions, long seed) throws IOException {
+        Files.createDirectories(dir);
+        DataGen gen = new DataGen(seed);
+        String[] ids;
+        try (Writer w = Files.newBufferedWriter(dir.resolve("tasks.json"), StandardCharsets.UTF_8); JsonArray a = new JsonArray(w)) {
+            ids = gen.tasks(tasks, (id, title, due, completed, tags) -> a.object(
+                "\"id\":" + str(id) + ",\"title\":" + str(title) + ",\"due\":" + str(due) + ",\"completed\":" + completed + ",\"tags\":" + str(tags)));
+        }
+        try (Writer w = Files.newBufferedWriter(dir.resolve("sessions.json"), StandardCharsets.UTF_8); JsonArray a = new JsonArray(w)) {
+            gen.sessions(sessions, ids, (id, taskId, start, end, completed) -> a.object(
+                "\"id\":" + str(id) + ",\"taskId\":" + str(taskId) + ",\"start\":" + str(start) + ",\"end\":" + str(end) + ",\"completed\":" + completed));
+        }
+        System.out.printf("Wrote %d tasks and %d sessions to %s%n", tasks, sessions, dir.toAbsolutePath());
+        return ids;
+    }
+
+    // generated text never needs more escaping than this
+    static String str(String s) { return '"' + s.replace("\\", "\\\\").replace("\"", "\\\"") + '"'; }
+
+    static final class JsonArray implements AutoCloseable {
+        final Writer w;
+        boolean first = true;
+
+        JsonArray(Writer w) { this.w = w; }
+
+        void object(String fields) {
+            try {
+                w.write(first ? "[{" : ",{");
+                w.write(fields);
+                w.write('}');
+                first = false;
+            } catch (IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException { w.write(first ? "[]" : "]"); w.flush(); }
+    }
+}
@@ -0,0 +1,41 @@
+package taskbuddy.bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// per-request parsing: the form body of POST /addTask and decoding of its values
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormBench {
+    Harness app;
+    String body = "title=Write+the+quarterly+report+%E2%9C%93&due=2026-10-20&tags=work%2Curgent";
+    String plain = "2026-10-20";
+    String escaped = "Write+the+quarterly+report+%E2%9C%93";
+
+    @Setup
+    public void setup() { app = Harness.load(); }
+
+    @Benchmark
+    public Map<String,String> parseForm() { return app.parseForm(body); }
+
+    @Benchmark
+    public String urlDecodePlain() { return app.urlDecode(plain); }
+
+    @Benchmark
+    public String urlDecodeEscaped() { return app.urlDecode(escaped); }
+}
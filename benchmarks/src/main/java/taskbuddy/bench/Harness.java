@@ -0,0 +1,83 @@
+package taskbuddy.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/*
+  The parts of TaskApp the benchmarks and the load driver exercise. TaskApp lives in the default
+  package, which a named package cannot import (and JMH refuses benchmarks in the default
+  package), so the implementation is BenchHarness, a default-package class compiled next to it
+  and looked up by name once. Calls through this interface are monomorphic and cost nothing
+  measurable next to the work behind them.
+*/
+public interface Harness {
+
+    static Harness load() {
+        try {
+            return (Harness) Class.forName("BenchHarness").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchHarness is missing from the classpath", e);
+        }
+    }
+
+    // -------------------- store --------------------
+    void putTask(String id, String title, String due, boolean completed, String tags);
+
+    // what POST /editTask does to the store, without the journal
+    void editTask(String id, String title);
+
+    void addSession(String id, String taskId, String start, String end, boolean completed);
+
+    int taskCount();
+
+    // -------------------- serialization --------------------
+    // the GET /tasks body: every task in priority order, with priority and daysLeft
+    void writeTaskList(OutputStream out) throws IOException;
+
+    // the tasks.json snapshot body
+    void writeTasksJson(OutputStream out) throws IOException;
+
+    // parses a tasks.json body into Task objects handed to sink (not stored); returns the count
+    int readTasksJson(byte[] json, Consumer<Object> sink) throws IOException;
+
+    // a full snapshot of the task store to file (temp file + fsync + rename), JSON or binary
+    void snapshotTasks(Path file, boolean binary) throws IOException;
+
+    // -------------------- request parsing --------------------
+    Map<String,String> parseForm(String body);
+
+    String urlDecode(String s);
+
+    // -------------------- pomodoro statistics --------------------
+    void rebuildStats() throws IOException;
+
+    // GET /pomodoro/stats?from=&to=&groupBy= without the JSON; from/to may be null; returns the bucket count
+    int queryStats(String from, String to, String groupBy);
+
+    // -------------------- latency recording --------------------
+    // a new histogram of the kind /metrics keeps per endpoint; safe to record into from any thread
+    Latencies newLatencies();
+
+    interface Latencies {
+        void record(long nanos);
+
+        long count();
+
+        long max();
+
+        double mean();
+
+        // the value at percentile p (0..100), within the histogram's ~1.6% resolution
+        long percentile(double p);
+    }
+
+    // -------------------- server --------------------
+    // TaskApp.main: loads taskapp.dataDir and listens on taskapp.port (set both before calling)
+    void startServer() throws Exception;
+
+    // drains requests and flushes every workspace, as the server's shutdown hook would
+    void stopServer();
+}
@@ -0,0 +1,58 @@
+package taskbuddy.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+  The JSON layer on its own, in memory: toJson writes the tasks.json body through JsonOut,
+  fromJson streams the same bytes back through JsonIn into Task objects (what startup does,
+  minus the store inserts).
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBench {
+    @Param({"1000", "100000"})
+    int tasks;
+
+    Harness app;
+    byte[] json;
+
+    @Setup
+    public void setup() throws IOException {
+        app = Harness.load();
+        new DataGen(42).tasks(tasks, app::putTask);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        app.writeTasksJson(out);
+        json = out.toByteArray();
+    }
+
+    @Benchmark
+    public long toJson() throws IOException {
+        CountingStream out = new CountingStream();
+        app.writeTasksJson(out);
+        return out.bytes;
+    }
+
+    @Benchmark
+    public int fromJson(Blackhole bh) throws IOException {
+        return app.readTasksJson(json, bh::consume);
+    }
+}
@@ -0,0 +1,302 @@
+package taskbuddy.bench;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/*
+  Closed-loop load test: each client sends its next request as soon as the previous one is
+  answered, from a weighted mix of reads and writes. Without --url a server is started in this
+  JVM (-Dtaskapp.* flags apply) on generated data in a temp directory, deleted on the way out.
+  Each operation's latencies go into the server's /metrics histogram, shared by all clients.
+
+    java -cp benchmarks/target/benchmarks.jar taskbuddy.bench.LoadDriver [options]
+      --url http://host:port   drive a running server instead
+      --tasks N --sessions N   data generated for the in-process server (10000 / 50000)
+      --clients N              concurrent clients (16)
+      --warmup S --seconds S   unrecorded warm-up, then the measured run (5 / 20)
+      --mix op=w,...           weights for list, since, search, stats, add, toggle, pomodoro
+      --seed N                 data and request choices (42)
+      --out FILE               results as JSON lines, one per operation
+      --compare FILE           compare with an earlier --out; exits 1 when an operation's p99 or
+                               throughput is worse by more than --threshold percent (20)
+
+  Being closed-loop, a stalled server slows the clients down instead of queueing more work, so
+  under overload tail latencies read lower than an open-loop test would show.
+*/
+public final class LoadDriver {
+    static final String[] OPS = {"list", "since", "search", "stats", "add", "toggle", "pomodoro"};
+    static final String DEFAULT_MIX = "list=20,since=30,search=15,stats=10,add=10,toggle=10,pomodoro=5";
+    static final String[] FIELDS = {"count", "rps", "errors", "meanMs", "p50Ms", "p90Ms", "p99Ms", "p999Ms", "maxMs"};
+    static final Pattern ID = Pattern.compile("\"id\":\"([^\"]+)\"");
+    static final Pattern VERSION = Pattern.compile("\"version\":(\\d+)");
+    static Path embeddedDir; // data of the in-process server, if one was started
+
+    public static void main(String[] args) throws Exception {
+        Map<String,String> opt = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) { System.err.println("Unexpected argument " + args[i]); System.exit(2); }
+            opt.put(args[i].substring(2), args[i + 1]);
+        }
+        int code;
+        try {
+            code = run(opt);
+        } finally {
+            if (embeddedDir != null) stopEmbedded();
+        }
+        System.exit(code);
+    }
+
+    static int run(Map<String,String> opt) throws Exception {
+        int clients = Integer.parseInt(opt.getOrDefault("clients", "16"));
+        int warmup = Integer.parseInt(opt.getOrDefault("warmup", "5"));
+        int seconds = Integer.parseInt(opt.getOrDefault("seconds", "20"));
+        long seed = Long.parseLong(opt.getOrDefault("seed", "42"));
+        int[] weights = mix(opt.getOrDefault("mix", DEFAULT_MIX));
+
+        String base = opt.get("url");
+        if (base == null) base = startEmbedded(Integer.parseInt(opt.getOrDefault("tasks", "10000")), Integer.parseInt(opt.getOrDefault("sessions", "50000")), seed);
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(5)).build();
+        List<String> ids = taskIds(http, base);
+        if (ids.isEmpty()) { System.err.println("No tasks at " + base + " to toggle or time sessions against"); return 2; }
+
+        System.out.printf("%d clients against %s (%d tasks), %ds warm-up + %ds measured%n", clients, base, ids.size(), warmup, seconds);
+        long measureFrom = System.nanoTime() + warmup * 1_000_000_000L;
+        long until = measureFrom + seconds * 1_000_000_000L;
+        Harness harness = Harness.load();
+        Harness.Latencies[] hist = new Harness.Latencies[OPS.length];
+        for (int i = 0; i < OPS.length; i++) hist[i] = harness.newLatencies();
+        Client[] cs = new Client[clients];
+        Thread[] threads = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            Client c = cs[i] = new Client(http, base, ids, weights, seed + i, hist);
+            threads[i] = new Thread(() -> c.run(measureFrom, until), "client-" + i);
+            threads[i].start();
+        }
+        for (Thread t : threads) t.join();
+
+        Map<String,Map<String,Double>> results = new LinkedHashMap<>();
+        for (int op = 0; op < OPS.length; op++) {
+            long errors = 0;
+            for (Client c : cs) errors += c.errors[op];
+            if (hist[op].count() > 0) results.put(OPS[op], summary(hist[op], errors, seconds));
+        }
+        print(results);
+        if (opt.containsKey("out")) write(Paths.get(opt.get("out")), results);
+        if (!opt.containsKey("compare")) return 0;
+        return compare(read(Paths.get(opt.get("compare"))), results, Double.parseDouble(opt.getOrDefault("threshold", "20")));
+    }
+
+    static int[] mix(String spec) {
+        int[] w = new int[OPS.length];
+        for (String part : spec.split(",")) {
+            String[] kv = part.trim().split("=");
+            int op = List.of(OPS).indexOf(kv[0]);
+            if (op < 0 || kv.length != 2) throw new IllegalArgumentException("--mix takes op=weight pairs over " + String.join(", ", OPS));
+            w[op] = Integer.parseInt(kv[1]);
+        }
+        return w;
+    }
+
+    static String startEmbedded(int tasks, int sessions, long seed) throws Exception {
+        Path dir = embeddedDir = Files.createTempDirectory("taskapp-load");
+        DataGen.write(dir, tasks, sessions, seed);
+        int port;
+        try (ServerSocket s = new ServerSocket(0)) { port = s.getLocalPort(); }
+        System.setProperty("taskapp.dataDir", dir.toString());
+        System.setProperty("taskapp.port", String.valueOf(port));
+        if (System.getProperty("taskapp.drainSeconds") == null) System.setProperty("taskapp.drainSeconds", "1");
+        Harness.load().startServer();
+        return "http://localhost:" + port;
+    }
+
+    // the server first, so its final flush doesn't write into a directory being deleted
+    static void stopEmbedded() throws IOException {
+        Harness.load().stopServer();
+        try (Stream<Path> files = Files.walk(embeddedDir)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.deleteIfExists(p);
+        }
+    }
+
+    static List<String> taskIds(HttpClient http, String base) throws IOException, InterruptedException {
+        String body = http.send(HttpRequest.newBuilder(URI.create(base + "/tasks")).build(), HttpResponse.BodyHandlers.ofString()).body();
+        List<String> ids = new ArrayList<>();
+        for (Matcher m = ID.matcher(body); m.find(); ) ids.add(m.group(1));
+        return ids;
+    }
+
+    static final class Client {
+        final HttpClient http;
+        final String base;
+        final List<String> ids;
+        final int[] weights;
+        final int totalWeight;
+        final Random rnd;
+        final Harness.Latencies[] hist;
+        final long[] errors = new long[OPS.length];
+        final String statsFrom = LocalDate.now().minusDays(30).toString();
+        long version;
+        String openSession;
+        int added;
+
+        Client(HttpClient http, String base, List<String> ids, int[] weights, long seed, Harness.Latencies[] hist) {
+            this.http = http; this.base = base; this.ids = ids; this.weights = weights; this.rnd = new Random(seed); this.hist = hist;
+            int sum = 0;
+            for (int w : weights) sum += w;
+            totalWeight = sum;
+        }
+
+        void run(long measureFrom, long until) {
+            while (System.nanoTime() < until) {
+                int op = pick();
+                HttpRequest req = request(op);
+                long start = System.nanoTime();
+                boolean ok;
+                try {
+                    HttpResponse<String> res = http.send(req, HttpResponse.BodyHandlers.ofString());
+                    ok = res.statusCode() < 400;
+                    if (ok) answered(op, res.body());
+                } catch (IOException e) {
+                    ok = false;
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long took = System.nanoTime() - start;
+                if (start >= measureFrom) { hist[op].record(took); if (!ok) errors[op]++; }
+            }
+        }
+
+        int pick() {
+            int r = rnd.nextInt(totalWeight);
+            for (int op = 0; ; op++) { r -= weights[op]; if (r < 0) return op; }
+        }
+
+        HttpRequest request(int op) {
+            switch (OPS[op]) {
+                case "list": return get("/tasks");
+                case "since": return get("/tasks?since=" + version);
+                case "search": {
+                    String word = rnd.nextBoolean() ? DataGen.VERBS[rnd.nextInt(DataGen.VERBS.length)] : DataGen.NOUNS[rnd.nextInt(DataGen.NOUNS.length)];
+                    return get("/tasks/search?limit=50&q=" + enc(word.substring(0, 3).toLowerCase() + "*"));
+                }
+                case "stats": return get("/pomodoro/stats?groupBy=day&from=" + statsFrom);
+                case "add": return post("/addTask", "title=" + enc("Load test task " + (++added)) + "&due=" + LocalDate.now().plusDays(rnd.nextInt(30)) + "&tags=load");
+                case "toggle": return post("/toggleComplete", "id=" + enc(randomId()));
+                default:
+                    return openSession == null ? post("/pomodoro/start", "taskId=" + enc(randomId())) : post("/pomodoro/stop", "sessionId=" + enc(openSession));
+            }
+        }
+
+        void answered(int op, String body) {
+            if (OPS[op].equals("since")) {
+                Matcher m = VERSION.matcher(body);
+                if (m.find()) version = Long.parseLong(m.group(1));
+            } else if (OPS[op].equals("pomodoro")) {
+                openSession = openSession == null ? body.trim() : null;
+            }
+        }
+
+        String randomId() { return ids.get(rnd.nextInt(ids.size())); }
+
+        HttpRequest get(String path) { return HttpRequest.newBuilder(URI.create(base + path)).build(); }
+
+        HttpRequest post(String path, String form) {
+            return HttpRequest.newBuilder(URI.create(base + path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form)).build();
+        }
+
+        static String enc(String s) { return URLEncoder.encode(s, StandardCharsets.UTF_8); }
+    }
+
+    // -------------------- results --------------------
+    static Map<String,Double> summary(Harness.Latencies h, long errors, int seconds) {
+        Map<String,Double> m = new LinkedHashMap<>();
+        m.put("count", (double) h.count());
+        m.put("rps", h.count() / (double) seconds);
+        m.put("errors", (double) errors);
+        m.put("meanMs", h.mean() / 1e6);
+        m.put("p50Ms", h.percentile(50) / 1e6);
+        m.put("p90Ms", h.percentile(90) / 1e6);
+        m.put("p99Ms", h.percentile(99) / 1e6);
+        m.put("p999Ms", h.percentile(99.9) / 1e6);
+        m.put("maxMs", h.max() / 1e6);
+        return m;
+    }
+
+    static void print(Map<String,Map<String,Double>> results) {
+        System.out.printf("%-9s %9s %9s %7s %9s %9s %9s %9s %9s %9s%n", "op", "count", "req/s", "errors", "mean ms", "p50", "p90", "p99", "p99.9", "max");
+        for (Map.Entry<String,Map<String,Double>> e : results.entrySet()) {
+            Map<String,Double> m = e.getValue();
+            System.out.printf("%-9s %9.0f %9.1f %7.0f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n", e.getKey(),
+                m.get("count"), m.get("rps"), m.get("errors"), m.get("meanMs"), m.get("p50Ms"), m.get("p90Ms"), m.get("p99Ms"), m.get("p999Ms"), m.get("maxMs"));
+        }
+    }
+
+    static void write(Path file, Map<String,Map<String,Double>> results) throws IOException {
+        try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            for (Map.Entry<String,Map<String,Double>> e : results.entrySet()) {
+                StringBuilder sb = new StringBuilder("{\"op\":\"").append(e.getKey()).append('"');
+                for (Map.Entry<String,Double> f : e.getValue().entrySet()) sb.append(",\"").append(f.getKey()).append("\":").append(f.getValue());
+                w.println(sb.append('}'));
+            }
+        }
+    }
+
+    // reads what write() wrote
+    static Map<String,Map<String,Double>> read(Path file) throws IOException {
+        Map<String,Map<String,Double>> results = new LinkedHashMap<>();
+        Pattern op = Pattern.compile("\"op\":\"([^\"]+)\"");
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            Matcher m = op.matcher(line);
+            if (!m.find()) continue;
+            Map<String,Double> fields = new LinkedHashMap<>();
+            for (String f : FIELDS) {
+                Matcher v = Pattern.compile("\"" + f + "\":([-0-9.Ee]+)").matcher(line);
+                if (v.find()) fields.put(f, Double.parseDouble(v.group(1)));
+            }
+            results.put(m.group(1), fields);
+        }
+        return results;
+    }
+
+    static int compare(Map<String,Map<String,Double>> before, Map<String,Map<String,Double>> after, double threshold) {
+        System.out.printf("%nCompared with the baseline (regression = p99 up or req/s down by more than %.0f%%):%n", threshold);
+        System.out.printf("%-9s %21s %9s %21s %9s%n", "op", "p99 ms", "change", "req/s", "change");
+        int regressions = 0;
+        for (Map.Entry<String,Map<String,Double>> e : after.entrySet()) {
+            Map<String,Double> old = before.get(e.getKey());
+            if (old == null || !old.containsKey("p99Ms") || !old.containsKey("rps")) continue;
+            Map<String,Double> now = e.getValue();
+            double p99 = change(old.get("p99Ms"), now.get("p99Ms")), rps = change(old.get("rps"), now.get("rps"));
+            boolean worse = p99 > threshold || rps < -threshold;
+            if (worse) regressions++;
+            System.out.printf("%-9s %9.2f -> %8.2f %+8.1f%% %9.1f -> %8.1f %+8.1f%%%s%n", e.getKey(),
+                old.get("p99Ms"), now.get("p99Ms"), p99, old.get("rps"), now.get("rps"), rps, worse ? "  REGRESSION" : "");
+        }
+        return regressions > 0 ? 1 : 0;
+    }
+
+    static double change(double before, double after) { return before == 0 ? 0 : (after - before) / before * 100; }
+}
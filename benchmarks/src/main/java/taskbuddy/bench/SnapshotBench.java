@@ -0,0 +1,62 @@
+package taskbuddy.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+  A full task snapshot to disk as the write-behind writer and journal compaction do it: temp
+  file, fsync, rename. Mostly bound by the disk, so compare runs on the same machine only. The
+  file size is printed once per trial; MB/s is that over the score.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotBench {
+    @Param({"1000", "100000"})
+    int tasks;
+
+    @Param({"json", "binary"})
+    String format;
+
+    Harness app;
+    Path dir, file;
+
+    @Setup
+    public void setup() throws IOException {
+        app = Harness.load();
+        new DataGen(42).tasks(tasks, app::putTask);
+        dir = Files.createTempDirectory("taskapp-bench");
+        file = dir.resolve(format.equals("binary") ? "tasks.bin" : "tasks.json");
+        app.snapshotTasks(file, format.equals("binary"));
+        System.out.printf("%n%s snapshot of %d tasks: %d bytes%n", format, tasks, Files.size(file));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public void snapshot() throws IOException {
+        app.snapshotTasks(file, format.equals("binary"));
+    }
+}
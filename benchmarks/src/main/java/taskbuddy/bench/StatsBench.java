@@ -0,0 +1,62 @@
+package taskbuddy.bench;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+  Pomodoro statistics: rebuild is the one-off pass over every session at startup, the queries
+  are what GET /pomodoro/stats costs afterwards (last 30 days by day, all time by task).
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class StatsBench {
+    @Param({"10000", "1000000"})
+    int sessions;
+
+    Harness app;
+    String from, to;
+
+    @Setup
+    public void setup() throws IOException {
+        app = Harness.load();
+        DataGen gen = new DataGen(42);
+        String[] ids = gen.tasks(1000, app::putTask);
+        gen.sessions(sessions, ids, app::addSession);
+        app.rebuildStats();
+        to = LocalDate.now().toString();
+        from = LocalDate.now().minusDays(30).toString();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void rebuild() throws IOException {
+        app.rebuildStats();
+    }
+
+    @Benchmark
+    public int lastMonthByDay() {
+        return app.queryStats(from, to, "day");
+    }
+
+    @Benchmark
+    public int allTimeByTask() {
+        return app.queryStats(null, null, "task");
+    }
+}
@@ -0,0 +1,56 @@
+package taskbuddy.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+  GET /tasks at store sizes from a personal list to a large shared one: the walk over the
+  priority index plus serialization of every task (with priority and daysLeft). editTask is the
+  store side of POST /editTask, which re-files the task in every index.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class TaskListBench {
+    @Param({"1000", "100000", "1000000"})
+    int tasks;
+
+    Harness app;
+    String[] ids;
+    int next;
+
+    @Setup
+    public void setup() {
+        app = Harness.load();
+        ids = new DataGen(42).tasks(tasks, app::putTask);
+    }
+
+    @Benchmark
+    public long listTasks() throws IOException {
+        CountingStream out = new CountingStream();
+        app.writeTaskList(out);
+        return out.bytes;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void editTask() {
+        int i = next++ % ids.length;
+        app.editTask(ids[i], "Edited task " + i);
+    }
+}
@@ -1,4 +1,5 @@
-const backendBase = window.location.origin;
+// opened as /w/<workspace>/, the page talks to that workspace
+const backendBase = window.location.origin + (window.location.pathname.match(/^\/w\/[^/]+/) || [""])[0];
 const el = id => document.getElementById(id);
 
 function qs(selector){ return document.querySelector(selector); }
@@ -25,11 +26,44 @@ darkToggle.addEventListener("click", () => { document.body.classList.toggle("dar
 if (localStorage.getItem("dark") === "true") document.body.classList.add("dark");
 
 // --- load & render
+// Local copy of the task list, kept in sync with /tasks?since=<version> so a refresh only
+// downloads what changed since the last one.
+const taskCache = new Map();
+let taskVersion = 0;
+const priorityRank = p => p === "High" ? 0 : p === "Medium" ? 1 : 2;
+
+// One delta fetch at a time: overlapping loads (a click and an SSE refresh) would send the same
+// since= and whichever finished last would set taskVersion, possibly back to an older version.
+let taskFetch = Promise.resolve();
+function fetchTasks() {
+  const next = taskFetch.catch(() => {}).then(fetchTaskDelta);
+  taskFetch = next;
+  return next;
+}
+
+async function fetchTaskDelta() {
+  const res = await fetch(backendBase + "/tasks?since=" + taskVersion);
+  const delta = await res.json();
+  if (delta.full) taskCache.clear();
+  delta.changed.forEach(t => taskCache.set(t.id, t));
+  delta.deleted.forEach(id => taskCache.delete(id));
+  taskVersion = delta.version;
+  return [...taskCache.values()].sort((a,b) => priorityRank(a.priority) - priorityRank(b.priority) || (a.due||"").localeCompare(b.due||""));
+}
+
+// The search box matches anywhere in the title or tags ("sign" finds "Design"). The cache
+// already holds every task, so this filters it instead of asking /tasks/search, whose word
+// prefixes wouldn't match inside a word and which caps a page at 1000 results.
+function searchTasks(tasks, q) {
+  q = q.toLowerCase();
+  return tasks.filter(t => (t.title||"").toLowerCase().includes(q) || (t.tags||"").toLowerCase().includes(q));
+}
+
 async function loadTasks() {
   try {
-    const res = await fetch(backendBase + "/tasks");
-    const data = await res.json();
-    renderTasks(data);
+    const data = await fetchTasks();
+    const q = el("searchInput").value.trim();
+    renderTasks(q ? searchTasks(data, q) : data);
     fillPomodoroTaskSelect(data);
     drawPriorityChart(data);
   } catch (e) {
@@ -39,9 +73,7 @@ async function loadTasks() {
 }
 
 function renderTasks(tasks) {
-  const q = el("searchInput").value.trim().toLowerCase();
   let filtered = tasks;
-  if (q) filtered = tasks.filter(t => (t.title||"").toLowerCase().includes(q) || (t.tags||"").toLowerCase().includes(q));
 
   const sort = el("sortSelect").value;
   if (sort === "due") filtered.sort((a,b) => (a.due||"").localeCompare(b.due||""));
@@ -130,10 +162,19 @@ function fillPomodoroTaskSelect(tasks) {
 el("startPom").addEventListener("click", async () => {
   const taskId = el("pomTaskSelect").value;
   if (!taskId) return alert("Select a task");
-  const resp = await fetch(backendBase + "/pomodoro/start", {
-    method: "POST", headers: {"Content-Type":"application/x-www-form-urlencoded"}, body: `taskId=${encodeURIComponent(taskId)}`
-  });
-  currentSessionId = await resp.text();
+  el("startPom").disabled = true;
+  // only a 200 body is a session id; on a network error or a 503 there is no session to count down
+  try {
+    const resp = await fetch(backendBase + "/pomodoro/start", {
+      method: "POST", headers: {"Content-Type":"application/x-www-form-urlencoded"}, body: `taskId=${encodeURIComponent(taskId)}`
+    });
+    const text = await resp.text();
+    if (!resp.ok) throw new Error(text || resp.statusText);
+    currentSessionId = text;
+  } catch (e) {
+    el("startPom").disabled = false;
+    return alert("Could not start the Pomodoro: " + e.message);
+  }
   pomRemaining = 25*60;
   el("startPom").disabled = true; el("stopPom").disabled = false;
   startCountdown();
@@ -161,6 +202,29 @@ function stopCountdown() { if (pomInterval) clearInterval(pomInterval); pomInter
 function updatePomDisplay() { const mm = Math.floor(pomRemaining/60).toString().padStart(2,'0'); const ss = Math.floor(pomRemaining%60).toString().padStart(2,'0'); el("pomTimer").innerText = `${mm}:${ss}`; }
 function notify(title, body) { if (!("Notification" in window)) return; if (Notification.permission === "granted") new Notification(title, { body }); else if (Notification.permission !== "denied") Notification.requestPermission().then(p => { if (p === "granted") new Notification(title, {body}); }); }
 
+// --- Live updates: the server pushes task and Pomodoro changes over Server-Sent Events
+let refreshTimer = null;
+function refreshSoon() { clearTimeout(refreshTimer); refreshTimer = setTimeout(loadTasks, 50); }
+
+if ("EventSource" in window) {
+  const events = new EventSource(backendBase + "/events");
+  events.addEventListener("task", refreshSoon);
+  events.addEventListener("pomodoro", e => {
+    const { op, session } = JSON.parse(e.data);
+    if (op === "start" && !currentSessionId && !el("startPom").disabled) {
+      // started in another tab: follow its countdown
+      currentSessionId = session.id;
+      pomRemaining = Math.max(0, 25*60 - Math.floor((Date.now() - Date.parse(session.start)) / 1000));
+      el("pomTaskSelect").value = session.taskId;
+      el("startPom").disabled = true; el("stopPom").disabled = false;
+      startCountdown();
+    } else if (op === "stop" && session.id === currentSessionId) {
+      currentSessionId = null;
+      stopCountdown();
+    }
+  });
+}
+
 // --- Priority chart
 function drawPriorityChart(tasks) {
   const counts = { High:0, Medium:0, Low:0 };